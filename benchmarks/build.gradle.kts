@@ -0,0 +1,67 @@
+plugins {
+    kotlin("multiplatform")
+    kotlin("plugin.allopen") version "2.0.21"
+    id("org.jetbrains.kotlinx.benchmark") version "0.4.12"
+}
+
+repositories {
+    mavenCentral()
+}
+
+kotlin {
+    jvm()
+    js(IR) {
+        nodejs()
+    }
+
+    sourceSets {
+        val commonMain by getting {
+            dependencies {
+                implementation(project(":"))
+                implementation("com.strumenta:antlr-kotlin-runtime:1.0.3")
+                implementation("org.jetbrains.kotlinx:kotlinx-benchmark-runtime:0.4.12")
+            }
+        }
+    }
+}
+
+allOpen {
+    annotation("org.openjdk.jmh.annotations.State")
+}
+
+// test resources of the main project, read at benchmark setup
+val generateBenchmarkResources = tasks.register("generateBenchmarkResources") {
+    val resourcesDir = rootProject.layout.projectDirectory.dir("src/commonTest/resources").asFile.absolutePath.replace('\\', '/')
+    val outputDir = layout.buildDirectory.dir("generated/benchmarkResources")
+    inputs.property("resourcesDir", resourcesDir)
+    outputs.dir(outputDir)
+    doLast {
+        val file = outputDir.get().file("io/zenwave360/zdl/benchmarks/BenchmarkResources.kt").asFile
+        file.parentFile.mkdirs()
+        file.writeText("package io.zenwave360.zdl.benchmarks\n\ninternal const val RESOURCES_DIR = \"$resourcesDir\"\n")
+    }
+}
+
+kotlin.sourceSets.commonMain {
+    kotlin.srcDir(generateBenchmarkResources)
+    kotlin.srcDir(rootProject.layout.projectDirectory.dir("src/commonFixtures/kotlin"))
+}
+
+benchmark {
+    targets {
+        register("jvm")
+        register("js")
+    }
+    configurations {
+        named("main") {
+            warmups = 3
+            iterations = 5
+            iterationTime = 1
+            iterationTimeUnit = "s"
+            mode = "avgt"
+            outputTimeUnit = "ms"
+            // allocation rate and bytes per operation, JVM only
+            advanced("jvmProfiler", "gc")
+        }
+    }
+}
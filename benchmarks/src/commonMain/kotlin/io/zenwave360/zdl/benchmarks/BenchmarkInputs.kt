@@ -0,0 +1,19 @@
+package io.zenwave360.zdl.benchmarks
+
+import io.zenwave360.zdl.fixtures.SyntheticZdlGenerator
+
+internal expect fun readFile(path: String): String
+
+/**
+ * Benchmark inputs: test resources of the main project by file name, or `synthetic*<n>` for a generated model
+ * n times the size of `complete.zdl`, see [SyntheticZdlGenerator.ofScale].
+ */
+internal object BenchmarkInputs {
+
+    fun read(input: String): String {
+        if (input.startsWith("synthetic*")) {
+            return SyntheticZdlGenerator.ofScale(input.substringAfter('*').toInt()).generate()
+        }
+        return readFile("$RESOURCES_DIR/$input")
+    }
+}
@@ -0,0 +1,58 @@
+package io.zenwave360.zdl.benchmarks
+
+import io.zenwave360.zdl.ZdlParser
+import io.zenwave360.zdl.antlr.JSONPath
+import io.zenwave360.zdl.antlr.ZdlModel
+import kotlinx.benchmark.Benchmark
+import kotlinx.benchmark.BenchmarkMode
+import kotlinx.benchmark.BenchmarkTimeUnit
+import kotlinx.benchmark.Mode
+import kotlinx.benchmark.OutputTimeUnit
+import kotlinx.benchmark.Param
+import kotlinx.benchmark.Scope
+import kotlinx.benchmark.Setup
+import kotlinx.benchmark.State
+
+/**
+ * [JSONPath] queries over a parsed model, from the recursive descent the post-processor runs
+ * to the definite lookups the validator runs once per field.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(BenchmarkTimeUnit.MICROSECONDS)
+open class JsonPathBenchmark {
+
+    @Param("complete.zdl", "synthetic*10", "synthetic*100")
+    var input: String = ""
+
+    @Param("$..fields[*]", "$.entities[*].fields[*].type", "$.relationships[*][*]", "$.config.basePackage")
+    var path: String = ""
+
+    private lateinit var model: ZdlModel
+    private lateinit var compiled: JSONPath.Compiled
+    private val sink = ArrayList<Any?>()
+
+    @Setup
+    fun setup() {
+        model = ZdlParser().parseModel(BenchmarkInputs.read(input))
+        compiled = JSONPath.compile(path)
+    }
+
+    /** Path string looked up in the compiled expression cache. */
+    @Benchmark
+    fun get(): Any? = JSONPath.get(model, path)
+
+    @Benchmark
+    fun getCompiled(): Any? = JSONPath.get(model, compiled)
+
+    /** Matches written into the same list on every call. */
+    @Benchmark
+    fun collect(): Int {
+        sink.clear()
+        return JSONPath.collect(model, compiled, sink).size
+    }
+
+    /** Matches walked lazily, one at a time. */
+    @Benchmark
+    fun stream(): Int = JSONPath.stream(model, compiled).count()
+}
@@ -0,0 +1,106 @@
+package io.zenwave360.zdl.benchmarks
+
+import io.zenwave360.zdl.ZdlParser
+import io.zenwave360.zdl.antlr.ZdlLexer
+import io.zenwave360.zdl.antlr.ZdlListenerImpl
+import io.zenwave360.zdl.antlr.ZdlModel
+import io.zenwave360.zdl.antlr.ZdlModelPostProcessor
+import io.zenwave360.zdl.antlr.ZdlModelValidator
+import kotlinx.benchmark.Benchmark
+import kotlinx.benchmark.BenchmarkMode
+import kotlinx.benchmark.BenchmarkTimeUnit
+import kotlinx.benchmark.Mode
+import kotlinx.benchmark.OutputTimeUnit
+import kotlinx.benchmark.Param
+import kotlinx.benchmark.Scope
+import kotlinx.benchmark.Setup
+import kotlinx.benchmark.State
+import org.antlr.v4.kotlinruntime.CharStreams
+import org.antlr.v4.kotlinruntime.CommonTokenStream
+import org.antlr.v4.kotlinruntime.ListTokenSource
+import org.antlr.v4.kotlinruntime.Token
+import org.antlr.v4.kotlinruntime.tree.ParseTreeWalker
+import io.zenwave360.zdl.antlr.ZdlParser as ZdlAntlrParser
+
+/**
+ * Each stage of [ZdlParser.parseModel] measured on its own, with the output of the previous stages prepared at setup,
+ * plus the whole pipeline and location lookups on its result.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(BenchmarkTimeUnit.MILLISECONDS)
+open class ParsePipelineBenchmark {
+
+    @Param("complete.zdl", "composed.zdl", "policies.zdl", "problems.zdl", "synthetic*10", "synthetic*100")
+    var input: String = ""
+
+    private lateinit var source: String
+    private lateinit var tokens: List<Token>
+    private lateinit var tree: ZdlAntlrParser.ZdlContext
+    private lateinit var rawModel: ZdlModel
+    private lateinit var processedModel: ZdlModel
+
+    private var middleLine = 0
+
+    private val parser = ZdlParser()
+    private val parserWithoutLocations = ZdlParser().withLocations(false)
+    private val twoStageParser = ZdlParser().withParseMode(ZdlParser.ParseMode.TWO_STAGE)
+
+    @Setup
+    fun setup() {
+        source = BenchmarkInputs.read(input)
+        tokens = lex()
+        tree = parse()
+        rawModel = walk()
+        processedModel = postProcess()
+        middleLine = source.count { it == '\n' } / 2
+    }
+
+    @Benchmark
+    fun lex(): List<Token> {
+        val tokenStream = CommonTokenStream(ZdlLexer(CharStreams.fromString(source)))
+        tokenStream.fill()
+        return tokenStream.tokens
+    }
+
+    @Benchmark
+    fun parse(): ZdlAntlrParser.ZdlContext =
+        ZdlAntlrParser(CommonTokenStream(ListTokenSource(tokens))).zdl()
+
+    @Benchmark
+    fun walk(): ZdlModel {
+        val listener = ZdlListenerImpl()
+        ParseTreeWalker.DEFAULT.walk(listener, tree)
+        return listener.model
+    }
+
+    /** [walk] without recording locations, as [ZdlParser.withLocations] false does. */
+    @Benchmark
+    fun walkWithoutLocations(): ZdlModel {
+        val listener = ZdlListenerImpl(withLocations = false)
+        ParseTreeWalker.DEFAULT.walk(listener, tree)
+        return listener.model
+    }
+
+    /** Only adds flags and lookup maps, so running it again on the same model does the same work. */
+    @Benchmark
+    fun postProcess(): ZdlModel = ZdlModelPostProcessor.postProcess(rawModel)
+
+    /** Clears previous problems first, so running it again on the same model does the same work. */
+    @Benchmark
+    fun validate(): ZdlModel = ZdlModelValidator().validate(processedModel)
+
+    @Benchmark
+    fun parseModel(): ZdlModel = parser.parseModel(source)
+
+    /** [parseModel] with SLL prediction first, falling back to LL only for sources the SLL stage can not parse. */
+    @Benchmark
+    fun parseModelTwoStage(): ZdlModel = twoStageParser.parseModel(source)
+
+    @Benchmark
+    fun parseModelWithoutLocations(): ZdlModel = parserWithoutLocations.parseModel(source)
+
+    /** Editor lookup of the element at the middle line of the source. */
+    @Benchmark
+    fun getLocation(): String? = processedModel.getLocation(middleLine, 8)
+}
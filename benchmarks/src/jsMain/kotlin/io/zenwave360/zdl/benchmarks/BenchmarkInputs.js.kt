@@ -0,0 +1,5 @@
+package io.zenwave360.zdl.benchmarks
+
+private val fs: dynamic = js("require('fs')")
+
+internal actual fun readFile(path: String): String = fs.readFileSync(path, "utf8") as String
@@ -0,0 +1,5 @@
+package io.zenwave360.zdl.benchmarks
+
+import java.io.File
+
+internal actual fun readFile(path: String): String = File(path).readText()
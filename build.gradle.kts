@@ -21,6 +21,7 @@ kotlin {
             }
         }
         val commonTest by getting {
+            kotlin.srcDir("src/commonFixtures/kotlin")
             dependencies {
                 implementation(kotlin("test"))
                 implementation("org.jetbrains.kotlinx:kotlinx-serialization-json:1.6.0")
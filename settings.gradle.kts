@@ -6,4 +6,4 @@ pluginManagement {
 }
 
 rootProject.name = "zdl-kotlin-multiplatform"
-
+include(":benchmarks")
@@ -0,0 +1,203 @@
+package io.zenwave360.zdl.fixtures
+
+import kotlin.random.Random
+
+/**
+ * Generates valid ZDL of configurable size for scale tests and benchmarks.
+ *
+ * Output only depends on the constructor arguments: the same [seed] always produces the same source, on every
+ * platform. It covers entities with nested fields, options and validations, enums, inputs, outputs, events,
+ * aggregates with commands and `withEvents`, services and relationships of the four types, all referencing each
+ * other so the generated model validates without problems.
+ */
+class SyntheticZdlGenerator(
+    private val seed: Long = 0,
+    private val entities: Int = 10,
+    private val fieldsPerEntity: Int = 8,
+    private val nestingDepth: Int = 1,
+) {
+
+    companion object {
+        /** Roughly [scale] times the size of the `complete.zdl` test resource. */
+        fun ofScale(scale: Int, seed: Long = 0): SyntheticZdlGenerator = SyntheticZdlGenerator(seed, entities = 4 * scale)
+
+        private val STRING_TYPES = listOf("String", "String", "String", "UUID")
+        private val NUMBER_TYPES = listOf("Integer", "Long", "BigDecimal", "Float", "Double")
+        private val OTHER_TYPES = listOf("Boolean", "LocalDate", "LocalDateTime", "Instant", "Duration")
+        private val RELATIONSHIP_TYPES = listOf("OneToOne", "OneToMany", "ManyToOne", "ManyToMany")
+        private val FIELD_OPTIONS = listOf("@auditing", "@ref", "@transient", "@naturalId")
+    }
+
+    private val enums = maxOf(1, entities / 4)
+    private val inputs = maxOf(1, entities / 2)
+    private val outputs = maxOf(1, entities / 2)
+
+    private lateinit var random: Random
+    private val out = StringBuilder()
+
+    fun generate(): String {
+        random = Random(seed)
+        out.clear()
+        config()
+        for (i in 0 until enums) enum(i)
+        for (i in 0 until entities) entity(i)
+        for (i in 0 until entities step 4) aggregate(i)
+        relationships()
+        for (i in 0 until inputs) input(i)
+        for (i in 0 until outputs) output(i)
+        for (i in 0 until entities) event(i)
+        for (i in 0 until entities step 4) service(i)
+        return out.toString()
+    }
+
+    private fun isAggregate(entity: Int) = entity % 2 == 0
+
+    private fun line(indent: Int, text: String) {
+        repeat(indent) { out.append("    ") }
+        out.append(text).append('\n')
+    }
+
+    private fun config() {
+        line(0, "/**\n * Synthetic model, seed $seed.\n */")
+        line(0, "config {")
+        line(1, "title \"Synthetic Model $seed\"")
+        line(1, "basePackage \"io.zenwave360.synthetic\"")
+        line(1, "persistence mongodb")
+        line(0, "}")
+        line(0, "")
+    }
+
+    private fun enum(i: Int) {
+        val withValues = random.nextBoolean()
+        line(0, "/** Status$i javadoc */")
+        line(0, "enum Status$i {")
+        val values = (0 until 3 + random.nextInt(6)).map { if (withValues) "VALUE_$it($it)" else "VALUE_$it" }
+        line(1, values.joinToString(", "))
+        line(0, "}")
+        line(0, "")
+    }
+
+    private fun entity(i: Int) {
+        line(0, "/**\n * Entity$i javadoc\n */")
+        if (isAggregate(i)) line(0, "@aggregate")
+        if (random.nextBoolean()) line(0, "@auditing")
+        line(0, "entity Entity$i(entity_${i}_table) {")
+        fields(1, "Entity$i", fieldsPerEntity, nestingDepth, references = i)
+        line(0, "}")
+        line(0, "")
+    }
+
+    /** Fields of standard types, enums, [references] previous entities, and nested entities down to [depth]. */
+    private fun fields(indent: Int, owner: String, count: Int, depth: Int, references: Int = 0, inputs: Int = 0) {
+        for (j in 0 until count) {
+            if (random.nextInt(4) == 0) line(indent, "/** field$j javadoc */")
+            val options = if (random.nextInt(5) == 0) FIELD_OPTIONS.random(random) + " " else ""
+            val kind = random.nextInt(10)
+            val field = when {
+                kind == 0 && depth > 0 -> {
+                    val array = if (random.nextBoolean()) "[]" else ""
+                    line(indent, "${options}nested$j ${owner}Nested$j$array {")
+                    fields(indent + 1, "${owner}Nested$j", maxOf(2, count / 2), depth - 1)
+                    line(indent, "}${if (array.isNotEmpty()) " maxlength(${10 + random.nextInt(90)})" else ""}")
+                    null
+                }
+                kind == 1 && references > 0 -> "entity$j Entity${random.nextInt(references)}"
+                kind == 2 && inputs > 0 -> "input$j Entity${random.nextInt(inputs)}Input"
+                kind == 3 -> "status$j Status${random.nextInt(enums)}" + if (random.nextBoolean()) " required" else ""
+                kind < 6 -> "field$j ${STRING_TYPES.random(random)}" + stringValidations()
+                kind < 8 -> "amount$j ${NUMBER_TYPES.random(random)}" + numberValidations()
+                else -> "flag$j ${OTHER_TYPES.random(random)}" + if (random.nextBoolean()) " required" else ""
+            }
+            if (field != null) {
+                val suffixJavadoc = if (random.nextInt(6) == 0) " /** field$j suffix javadoc */" else ""
+                line(indent, "$options$field$suffixJavadoc")
+            }
+        }
+    }
+
+    private fun stringValidations(): String = buildString {
+        if (random.nextBoolean()) append(" required")
+        if (random.nextInt(3) == 0) append(" unique")
+        if (random.nextInt(3) == 0) append(" minlength(${random.nextInt(5)})")
+        if (random.nextInt(3) == 0) append(" maxlength(${10 + random.nextInt(245)})")
+        if (random.nextInt(5) == 0) append(" pattern(/^[A-Z][a-z]+$/)")
+    }
+
+    private fun numberValidations(): String = buildString {
+        if (random.nextBoolean()) append(" required")
+        if (random.nextInt(3) == 0) append(" min(${random.nextInt(10)})")
+        if (random.nextInt(3) == 0) append(" max(${100 + random.nextInt(1000)})")
+    }
+
+    private fun aggregate(i: Int) {
+        line(0, "aggregate Entity${i}Aggregate(Entity$i) {")
+        line(1, "create(${inputFor(i)}) withEvents Entity${i}Created")
+        line(1, "update(${inputFor(i)}) withEvents Entity${i}Updated [Entity${i}Created|Entity${i}Updated]")
+        line(1, "delete() withEvents Entity${i}Deleted")
+        line(0, "}")
+        line(0, "")
+    }
+
+    private fun relationships() {
+        if (entities < 2) return
+        for ((t, type) in RELATIONSHIP_TYPES.withIndex()) {
+            line(0, "relationship $type {")
+            for (i in t until entities step RELATIONSHIP_TYPES.size) {
+                val from = i
+                val to = (i + 1 + random.nextInt(entities - 1)) % entities
+                val validations = if (random.nextBoolean()) " required" else ""
+                if (random.nextInt(4) == 0) line(1, "/** Entity$from.related$to javadoc */")
+                line(1, "Entity$from{related$to(name)$validations} to Entity$to{inverse$from}")
+            }
+            line(0, "}")
+            line(0, "")
+        }
+    }
+
+    private fun inputFor(entity: Int) = "Entity${entity % inputs}Input"
+
+    private fun input(i: Int) {
+        line(0, "input Entity${i}Input {")
+        fields(1, "Entity${i}Input", fieldsPerEntity / 2 + 1, 0, inputs = i)
+        line(0, "}")
+        line(0, "")
+    }
+
+    private fun output(i: Int) {
+        line(0, "output Entity${i}Output {")
+        fields(1, "Entity${i}Output", fieldsPerEntity / 2 + 1, nestingDepth, references = entities)
+        line(0, "}")
+        line(0, "")
+    }
+
+    private fun event(i: Int) {
+        for (name in listOf("Created", "Updated", "Deleted")) {
+            if (name != "Created" && !isAggregate(i)) continue
+            line(0, "/** Entity$i$name javadoc */")
+            line(0, "@asyncapi({channel: \"Entity${i}Channel\", topic: \"synthetic.entity_$i\"})")
+            line(0, "event Entity$i$name {")
+            line(1, "id String required")
+            fields(1, "Entity$i$name", fieldsPerEntity / 2, 0)
+            line(0, "}")
+            line(0, "")
+        }
+    }
+
+    private fun service(i: Int) {
+        val aggregates = listOf(i, i + 2).filter { it < entities && isAggregate(it) }
+        line(0, "@rest(\"/entity$i\")")
+        line(0, "service Entity${i}Service for (${aggregates.joinToString(", ") { "Entity$it" }}) {")
+        for (a in aggregates) {
+            line(1, "@get(\"/{id}\")")
+            line(1, "getEntity$a(id) Entity$a?")
+            line(1, "@post")
+            line(1, "createEntity$a(${inputFor(a)}) Entity$a withEvents Entity${a}Created")
+            line(1, "@put(\"/{id}\")")
+            line(1, "updateEntity$a(id, ${inputFor(a)}) Entity$a withEvents [Entity${a}Created|Entity${a}Updated]")
+            line(1, "@post(\"/search\")")
+            line(1, "searchEntity$a(${inputFor(a)}) Entity${a % outputs}Output[]")
+        }
+        line(0, "}")
+        line(0, "")
+    }
+}
@@ -5,6 +5,8 @@ grammar Zdl;
     override fun match(ttype: Int): org.antlr.v4.kotlinruntime.Token {
         return try {
             super.match(ttype)
+        } catch (e: org.antlr.v4.kotlinruntime.misc.ParseCancellationException) {
+            throw e // SLL stage of two-stage parsing bails out, see ZdlParser.ParseMode
         } catch (e: Exception) {
             e.printStackTrace()
             super.match(ttype)
@@ -0,0 +1,42 @@
+package io.zenwave360.zdl
+
+/** Returns a supplier holding one value per thread (a single value on single-threaded platforms). */
+internal expect fun <T> threadLocal(initializer: () -> T): () -> T
+
+internal expect fun defaultExecutor(): ZdlExecutor
+
+internal interface Counter {
+    fun increment()
+    fun get(): Long
+}
+
+/** Returns a counter that can be safely incremented from several threads. */
+internal expect fun counter(): Counter
+
+internal interface ConcurrentCache<K : Any, V> {
+    /** Returns the value for [key], computing it at most once even when called concurrently. */
+    fun getOrPut(key: K, compute: () -> V): V
+    val size: Int
+    fun clear()
+}
+
+/** Returns a cache holding at most [maxSize] entries, evicting old ones once full. */
+internal expect fun <K : Any, V> concurrentCache(maxSize: Int = Int.MAX_VALUE): ConcurrentCache<K, V>
+
+internal interface WeightedCache<K : Any, V> {
+    /** Returns the value for [key], computing it at most once even when called concurrently. */
+    fun getOrPut(key: K, weight: Int, compute: () -> V): V
+    val size: Int
+    /** Sum of the weights of the cached values. */
+    val weight: Long
+    fun clear()
+}
+
+/**
+ * Returns a cache holding values up to a total [maxWeight], evicting the least recently used ones once full.
+ * Values weighing more than [maxWeight] on their own are computed without being cached.
+ */
+internal expect fun <K : Any, V> lruCache(maxWeight: Long): WeightedCache<K, V>
+
+/** Bytes allocated so far by the current thread, or -1 when the platform can not tell. */
+internal expect fun currentThreadAllocatedBytes(): Long
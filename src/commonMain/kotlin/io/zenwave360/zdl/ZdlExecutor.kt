@@ -0,0 +1,21 @@
+package io.zenwave360.zdl
+
+/**
+ * Runs independent parsing/validation tasks, possibly concurrently.
+ *
+ * Results are always returned in the same order as the submitted tasks, so callers can merge them deterministically.
+ */
+interface ZdlExecutor {
+
+    fun <T> invokeAll(tasks: List<() -> T>): List<T>
+
+    companion object {
+        /** Runs every task on the calling thread. */
+        val SEQUENTIAL: ZdlExecutor = object : ZdlExecutor {
+            override fun <T> invokeAll(tasks: List<() -> T>): List<T> = tasks.map { it() }
+        }
+
+        /** Platform default: a shared fork-join pool on the JVM, sequential elsewhere. */
+        val DEFAULT: ZdlExecutor get() = defaultExecutor()
+    }
+}
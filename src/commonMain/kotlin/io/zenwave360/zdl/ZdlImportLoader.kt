@@ -0,0 +1,81 @@
+package io.zenwave360.zdl
+
+/** A ZDL source and the path identifying it, used to detect import cycles and to qualify problems. */
+data class ZdlSource(val path: String, val content: String)
+
+/**
+ * Loads the sources referenced by `@import("...")` statements, see [ZdlParser.parseModelWithImports].
+ *
+ * Loaders are called concurrently when the parser executor allows it.
+ */
+fun interface ZdlImportLoader {
+
+    /**
+     * Loads [import] as written in the importing file [importer] (null for the root model), or returns null if it
+     * can not be resolved by this loader. Returned paths must be canonical: the same file always gets the same path.
+     */
+    fun load(import: String, importer: String?): ZdlSource?
+
+    companion object {
+
+        /** Loads from in-memory sources keyed by path, resolving imports relative to the importing file. */
+        fun fromMap(sources: Map<String, String>): ZdlImportLoader = ZdlImportLoader { import, importer ->
+            val path = resolvePath(importer, import)
+            sources[path]?.let { ZdlSource(path, it) }
+        }
+
+        /** Tries each loader in order. */
+        fun firstOf(vararg loaders: ZdlImportLoader): ZdlImportLoader = ZdlImportLoader { import, importer ->
+            loaders.firstNotNullOfOrNull { it.load(import, importer) }
+        }
+
+        /**
+         * Resolves a `/` separated [import] path relative to the directory of [importer], or to the root of the
+         * importer path when it starts with `/`.
+         */
+        fun resolvePath(importer: String?, import: String): String {
+            val base = if (import.startsWith("/") || importer == null) "" else importer.substringBeforeLast('/', "")
+            val segments = mutableListOf<String>()
+            for (segment in "$base/$import".split('/')) {
+                when (segment) {
+                    "", "." -> {}
+                    ".." -> segments.removeLastOrNull()
+                    else -> segments.add(segment)
+                }
+            }
+            return segments.joinToString("/", prefix = if ((importer ?: import).startsWith("/")) "/" else "")
+        }
+    }
+}
+
+/**
+ * Raw (not yet post-processed nor validated) models of imported sources, keyed by a digest of their content so each
+ * distinct source is parsed once no matter how many models import it, without the cache keeping the text itself.
+ *
+ * Holds models up to a total of [maxLength] source characters, evicting the least recently used ones beyond that:
+ * a raw model takes memory in proportion to its source. Thread-safe.
+ */
+class ZdlParseCache(val maxLength: Long = DEFAULT_MAX_LENGTH) {
+
+    companion object {
+        const val DEFAULT_MAX_LENGTH = 4L * 1024 * 1024
+
+        /** Process-wide cache, for parsers opting in with [ZdlParser.withParseCache]. */
+        val SHARED = ZdlParseCache()
+    }
+
+    private val models = lruCache<Key, io.zenwave360.zdl.antlr.ZdlModel>(maxLength)
+
+    /** Number of cached models. */
+    val size: Int get() = models.size
+
+    /** Total length of the sources of the cached models. */
+    val length: Long get() = models.weight
+
+    fun clear() = models.clear()
+
+    internal fun getOrParse(content: String, locations: Boolean = true, parse: (String) -> io.zenwave360.zdl.antlr.ZdlModel) =
+        models.getOrPut(Key(Sha256.digest(content), locations), content.length) { parse(content) }
+
+    private data class Key(val digest: String, val locations: Boolean)
+}
@@ -0,0 +1,75 @@
+package io.zenwave360.zdl
+
+import io.zenwave360.zdl.antlr.ZdlModel
+import io.zenwave360.zdl.antlr.ZdlModelMerger
+
+/**
+ * Loads and parses the transitive `@import`s of a root source, one level of the import graph at a time so each
+ * level is loaded and parsed in parallel, and merges everything into one raw model: imported files first, in
+ * depth-first order, so definitions in the importing file win.
+ */
+internal class ZdlImportResolver(
+    private val loader: ZdlImportLoader,
+    private val executor: ZdlExecutor,
+    private val parse: (ZdlSource) -> ZdlModel,
+) {
+
+    /** Problem with the import at [path] (`imports.<index>`) of the merged model. */
+    class ImportProblem(val path: String, val import: String, val message: String)
+
+    class Resolution(val model: ZdlModel, val problems: List<ImportProblem>, val duplicates: List<ZdlModelMerger.Duplicate>)
+
+    private class Import(val importer: String, val index: Int, val import: String)
+
+    fun resolve(root: ZdlSource): Resolution {
+        val models = mutableMapOf(root.path to parse(root))
+        val imports = mutableMapOf<String, List<Pair<Import, String?>>>()
+        val problems = mutableListOf<ImportProblem>()
+
+        var level = listOf(root.path)
+        while (level.isNotEmpty()) {
+            val requests = level.flatMap { path ->
+                models.getValue(path).importValues().mapIndexed { index, import -> Import(path, index, import) }
+            }
+            val loaded = executor.invokeAll(requests.map { request -> { loader.load(request.import, request.importer) } })
+            for ((importer, resolved) in requests.zip(loaded).groupBy { it.first.importer }) {
+                imports[importer] = resolved.map { (request, source) -> request to source?.path }
+            }
+            val newSources = loaded.filterNotNull().distinctBy { it.path }.filter { it.path !in models }
+            val parsed = executor.invokeAll(newSources.map { source -> { parse(source) } })
+            newSources.zip(parsed).forEach { (source, model) -> models[source.path] = model }
+            level = newSources.map { it.path }
+        }
+
+        val order = mutableListOf<String>()
+        val visiting = mutableListOf<String>()
+        val fileProblems = mutableListOf<Pair<Import, String>>()
+        fun visit(path: String) {
+            visiting.add(path)
+            for ((request, resolved) in imports[path].orEmpty()) {
+                when {
+                    resolved == null -> fileProblems.add(request to "%s could not be resolved")
+                    resolved in visiting -> {
+                        val cycle = visiting.subList(visiting.indexOf(resolved), visiting.size) + resolved
+                        fileProblems.add(request to "%s is part of an import cycle: ${cycle.joinToString(" -> ")}")
+                    }
+                    resolved !in order -> visit(resolved)
+                }
+            }
+            visiting.removeLast()
+            order.add(path)
+        }
+        visit(root.path)
+
+        // imports of each file are appended to the merged imports list in merge order
+        val importsOffsets = mutableMapOf<String, Int>()
+        order.fold(0) { offset, path -> importsOffsets[path] = offset; offset + models.getValue(path).importValues().size }
+        for ((request, message) in fileProblems) {
+            problems.add(ImportProblem("imports.${importsOffsets.getValue(request.importer) + request.index}", request.import, message))
+        }
+        val merged = ZdlModelMerger.merge(order.map { it to models.getValue(it) })
+        return Resolution(merged.model, problems, merged.duplicates)
+    }
+
+    private fun ZdlModel.importValues(): List<String> = (this["imports"] as List<*>).map { it.toString() }
+}
@@ -0,0 +1,270 @@
+package io.zenwave360.zdl
+
+import io.zenwave360.zdl.antlr.FluentMap
+import io.zenwave360.zdl.antlr.ZdlModel
+import io.zenwave360.zdl.antlr.ZdlLocations
+import io.zenwave360.zdl.antlr.ZdlModelPostProcessor
+
+/**
+ * Splices a re-parsed top-level block (entity, enum, input, output, event, aggregate, service or relationships)
+ * into a previously parsed model, reusing every other element as it was.
+ *
+ * The edited block is found through the character ranges stored in [ZdlModel.getLocations]. Only its new text is
+ * parsed, locations of the elements that follow the edit are shifted, and the result is the raw model as the
+ * listener would have built it for the whole source: post-processing and validation still need to run on it.
+ * [splice] returns null whenever that can not be guaranteed (edit outside of a block, syntax errors, definitions
+ * other than blocks...) and the caller must fall back to a full parse.
+ *
+ * Unchanged elements are shared with the spliced model. Post-processing only writes the flags that change, and
+ * elements with fields whose flags can change are copied, so the previous model is left as it was.
+ */
+internal class ZdlIncrementalParser(private val parseSnippet: (String) -> ZdlModel?) {
+
+    companion object {
+        private val BLOCK_COLLECTIONS = listOf("entities", "enums", "inputs", "outputs", "events", "aggregates", "services")
+        private const val RELATIONSHIPS = "relationships"
+        private val PROCESSED_KEYS = listOf("locations", "problems", "allEntitiesAndEnums")
+        /** Sections whose names [ZdlModelPostProcessor] flags fields with. */
+        private val FIELD_TYPE_SECTIONS = listOf("entities", "enums", "inputs", "outputs", "events")
+        private val FIELD_SECTIONS = listOf("entities", "inputs", "outputs", "events")
+    }
+
+    private class Block(val start: Int, val end: Int, val line: Int, val column: Int)
+
+    /** Moves positions found after the edit: offsets by [offset], lines by [lines], and columns on [line] by [columns]. */
+    private class Shift(val offset: Int, val lines: Int, val line: Int, val columns: Int) {
+        fun apply(position: IntArray): IntArray = intArrayOf(
+            position[0] + offset,
+            position[1] + offset,
+            position[2] + lines,
+            if (position[2] == line) position[3] + columns else position[3],
+            position[4] + lines,
+            if (position[4] == line) position[5] + columns else position[5]
+        )
+    }
+
+    fun splice(previous: ZdlModel, previousSource: String, edit: ZdlTextEdit, source: String): ZdlModel? {
+        // locations are code point offsets, only comparable to string indexes when there are no surrogate pairs
+        if (previousSource.any { it.isSurrogate() } || edit.replacement.any { it.isSurrogate() }) return null
+        val block = findBlock(previous, edit) ?: return null
+
+        val delta = edit.replacement.length - edit.length
+        val snippetEnd = block.end + delta
+        if (!isTokenBoundary(source, block.start - 1) || !isTokenBoundary(source, snippetEnd)) return null
+        val snippet = parseSnippet(source.substring(block.start, snippetEnd)) ?: return null
+        if (!containsOnlyBlocks(snippet)) return null
+
+        val model = ZdlModel()
+        for ((key, value) in previous) {
+            when (key) {
+                in PROCESSED_KEYS -> {}
+                in BLOCK_COLLECTIONS -> {
+                    @Suppress("UNCHECKED_CAST")
+                    val spliced = spliceEntries(block, value as Map<String, Any?>, snippet[key] as Map<String, Any?>) { name, _ ->
+                        startOf(previous, "$key.$name")
+                    }
+                    model[key] = spliced ?: return null
+                }
+                RELATIONSHIPS -> model[key] = spliceRelationships(block, previous, snippet) ?: return null
+                else -> model[key] = value
+            }
+        }
+        spliceLocations(block, previous, snippet, model, editShift(block, previousSource, edit, source))
+        resetPostProcessedFlags(model, changedDefinitions(block, previous, snippet))
+        return model
+    }
+
+    /** The largest top-level block range containing the whole edit. */
+    private fun findBlock(previous: ZdlModel, edit: ZdlTextEdit): Block? {
+        val locations = previous.locations
+        var block = -1
+        for (i in 0 until locations.size) {
+            val start = locations.get(i, ZdlLocations.START_OFFSET)
+            val end = locations.get(i, ZdlLocations.END_OFFSET)
+            if (start <= edit.offset && edit.end <= end && isBlockLocation(locations.key(i))) {
+                if (block < 0 || end - start > locations.get(block, ZdlLocations.END_OFFSET) - locations.get(block, ZdlLocations.START_OFFSET)) {
+                    block = i
+                }
+            }
+        }
+        return if (block < 0) null else locations.position(block).let { Block(it[0], it[1], it[2], it[3]) }
+    }
+
+    private fun isBlockLocation(key: String): Boolean =
+        key.startsWith("$RELATIONSHIPS.") || BLOCK_COLLECTIONS.any { key.startsWith("$it.") }
+
+    /** The snippet must not merge with the surrounding text into different tokens. */
+    private fun isTokenBoundary(source: String, index: Int): Boolean =
+        index < 0 || index >= source.length || source[index].isWhitespace() || source[index] in "{}()[],"
+
+    private fun containsOnlyBlocks(snippet: ZdlModel): Boolean {
+        for ((key, value) in snippet) {
+            when (key) {
+                in PROCESSED_KEYS -> {}
+                in BLOCK_COLLECTIONS -> {
+                    if ((value as Map<*, *>).keys.any { startOf(snippet, "$key.$it") == null }) return false
+                }
+                RELATIONSHIPS -> {
+                    for (relationships in (value as Map<*, *>).values) {
+                        if ((relationships as Map<*, *>).keys.any { startOf(snippet, "$RELATIONSHIPS.$it") == null }) return false
+                    }
+                }
+                else -> if (!(value is Map<*, *> && value.isEmpty() || value is List<*> && value.isEmpty())) return false
+            }
+        }
+        return true
+    }
+
+    private fun startOf(model: ZdlModel, location: String): Int? =
+        model.locations.indexOf(location).takeIf { it >= 0 }?.let { model.locations.get(it, ZdlLocations.START_OFFSET) }
+
+    /**
+     * Drops the previous entries defined inside the block and inserts the snippet entries in their place,
+     * keeping source order. Returns null if a snippet entry is also defined outside of the block.
+     */
+    private fun spliceEntries(block: Block, previous: Map<String, Any?>, snippet: Map<String, Any?>, startOf: (String, Any?) -> Int?): FluentMap? {
+        val spliced = FluentMap.build()
+        var inserted = false
+        for ((key, value) in previous) {
+            val start = startOf(key, value)
+            if (!inserted && start != null && start >= block.start) {
+                spliced.putAll(snippet)
+                inserted = true
+            }
+            if (start != null && start >= block.start && start < block.end) continue
+            if (snippet.containsKey(key)) return null
+            spliced[key] = value
+        }
+        if (!inserted) {
+            spliced.putAll(snippet)
+        }
+        return spliced
+    }
+
+    @Suppress("UNCHECKED_CAST")
+    private fun spliceRelationships(block: Block, previous: ZdlModel, snippet: ZdlModel): FluentMap? {
+        val previousByType = previous.getRelationships() as Map<String, Map<String, Any?>>
+        val snippetByType = snippet.getRelationships() as Map<String, Map<String, Any?>>
+        val newTypes = snippetByType.filterKeys { !previousByType.containsKey(it) }
+        val relationshipStart = { name: String, _: Any? -> startOf(previous, "$RELATIONSHIPS.$name") }
+
+        val spliced = FluentMap.build()
+        var inserted = false
+        for ((type, relationships) in previousByType) {
+            val start = relationships.keys.mapNotNull { relationshipStart(it, null) }.minOrNull()
+            if (!inserted && start != null && start >= block.start) {
+                spliced.putAll(newTypes)
+                inserted = true
+            }
+            val splicedRelationships = spliceEntries(block, relationships, snippetByType[type] ?: emptyMap(), relationshipStart) ?: return null
+            if (splicedRelationships.isNotEmpty()) {
+                spliced[type] = splicedRelationships
+            }
+        }
+        if (!inserted) {
+            spliced.putAll(newTypes)
+        }
+        return spliced
+    }
+
+    private fun spliceLocations(block: Block, previous: ZdlModel, snippet: ZdlModel, model: ZdlModel, shift: Shift) {
+        val locations = model.locations
+        val previousLocations = previous.locations
+        var inserted = false
+        for (i in 0 until previousLocations.size) {
+            val start = previousLocations.get(i, ZdlLocations.START_OFFSET)
+            if (!inserted && start >= block.start) {
+                insertSnippetLocations(block, snippet, locations)
+                inserted = true
+            }
+            when {
+                start < block.start -> locations.set(previousLocations.key(i), previousLocations.position(i))
+                start >= block.end -> locations.set(previousLocations.key(i), shift.apply(previousLocations.position(i)))
+            }
+        }
+        if (!inserted) {
+            insertSnippetLocations(block, snippet, locations)
+        }
+    }
+
+    private fun insertSnippetLocations(block: Block, snippet: ZdlModel, locations: ZdlLocations) {
+        val snippetLocations = snippet.locations
+        for (i in 0 until snippetLocations.size) {
+            locations.set(snippetLocations.key(i), toSourcePosition(block, snippetLocations.position(i)))
+        }
+    }
+
+    /** Snippet positions are relative to the block start: line 1, column 0. */
+    private fun toSourcePosition(block: Block, position: IntArray): IntArray = intArrayOf(
+        position[0] + block.start,
+        position[1] + block.start,
+        position[2] + block.line - 1,
+        if (position[2] == 1) position[3] + block.column else position[3],
+        position[4] + block.line - 1,
+        if (position[4] == 1) position[5] + block.column else position[5]
+    )
+
+    private fun editShift(block: Block, previousSource: String, edit: ZdlTextEdit, source: String): Shift {
+        val editEndLine = block.line + countLines(previousSource, block.start, edit.end)
+        val previousEndColumn = edit.end - (previousSource.lastIndexOf('\n', edit.end - 1) + 1)
+        val newEnd = edit.offset + edit.replacement.length
+        val newEndColumn = newEnd - (source.lastIndexOf('\n', newEnd - 1) + 1)
+        val lines = countLines(edit.replacement, 0, edit.replacement.length) - countLines(previousSource, edit.offset, edit.end)
+        return Shift(edit.replacement.length - edit.length, lines, editEndLine, newEndColumn - previousEndColumn)
+    }
+
+    private fun countLines(text: String, start: Int, end: Int): Int {
+        var lines = 0
+        for (i in start until end) {
+            if (text[i] == '\n') lines++
+        }
+        return lines
+    }
+
+    /** Names defined in the block before the edit and not after it, or the other way round, by section. */
+    private fun changedDefinitions(block: Block, previous: ZdlModel, snippet: ZdlModel): Set<String> {
+        val changed = HashSet<String>()
+        for (section in FIELD_TYPE_SECTIONS) {
+            val before = (previous[section] as Map<*, *>).keys.map { it.toString() }.filterTo(HashSet()) { name ->
+                startOf(previous, "$section.$name").let { it != null && it >= block.start && it < block.end }
+            }
+            val after = (snippet[section] as Map<*, *>).keys.mapTo(HashSet()) { it.toString() }
+            before.filterTo(changed) { it !in after }
+            after.filterTo(changed) { it !in before }
+        }
+        return changed
+    }
+
+    /**
+     * [ZdlModelPostProcessor] only ever sets flags, so fields typed with a [changed] name start over. They are
+     * copied, along with the element and fields map holding them, as the previous model still shares the originals.
+     */
+    @Suppress("UNCHECKED_CAST")
+    private fun resetPostProcessedFlags(model: ZdlModel, changed: Set<String>) {
+        if (changed.isEmpty()) return
+        for (section in FIELD_SECTIONS) {
+            val elements = model[section] as MutableMap<String, Any?>
+            for (entry in elements.entries) {
+                val element = entry.value as? Map<String, Any?> ?: continue
+                val fields = element["fields"] as? Map<String, Any?> ?: continue
+                if (fields.values.none { (it as? Map<*, *>)?.get("type") in changed }) continue
+                val copiedFields = FluentMap.build()
+                for ((name, field) in fields) {
+                    copiedFields[name] = if ((field as? Map<*, *>)?.get("type") in changed) resetFlags(field as Map<String, Any?>) else field
+                }
+                entry.setValue(FluentMap.build().putAllEntries(element).with("fields", copiedFields))
+            }
+        }
+    }
+
+    private fun resetFlags(field: Map<String, Any?>): FluentMap {
+        val copy = FluentMap.build().putAllEntries(field)
+        copy["isEnum"] = false
+        copy["isEntity"] = false
+        copy["isComplexType"] = false
+        copy.remove("isInput")
+        copy.remove("isOutput")
+        copy.remove("isEvent")
+        return copy
+    }
+}
@@ -0,0 +1,117 @@
+package io.zenwave360.zdl
+
+import io.zenwave360.zdl.antlr.ZdlModel
+import kotlin.time.TimeSource
+
+enum class ZdlParsePhase { LEXING, PARSING, TREE_WALK, POST_PROCESSING, VALIDATION }
+
+/**
+ * Receives timings and counts of each parse, see [ZdlParser.withInstrumentation].
+ *
+ * Callbacks run on the parsing threads, so they can be called concurrently by batch and multi-file parses.
+ */
+interface ZdlInstrumentation {
+
+    /** [allocatedBytes] is -1 when the platform can not measure allocations of the current thread. */
+    fun phaseCompleted(sourceName: String, phase: ZdlParsePhase, wallTimeNanos: Long, allocatedBytes: Long) {}
+
+    /** A validation rule, see [io.zenwave360.zdl.antlr.ZdlValidationRule], finished with [problems] problems. */
+    fun ruleCompleted(sourceName: String, ruleId: String, wallTimeNanos: Long, problems: Int) {}
+
+    fun parseCompleted(metrics: ZdlParseMetrics) {}
+
+    companion object {
+        /** Forwards every callback to each of [instrumentations], in order. */
+        fun composite(vararg instrumentations: ZdlInstrumentation): ZdlInstrumentation = object : ZdlInstrumentation {
+            override fun phaseCompleted(sourceName: String, phase: ZdlParsePhase, wallTimeNanos: Long, allocatedBytes: Long) =
+                instrumentations.forEach { it.phaseCompleted(sourceName, phase, wallTimeNanos, allocatedBytes) }
+
+            override fun ruleCompleted(sourceName: String, ruleId: String, wallTimeNanos: Long, problems: Int) =
+                instrumentations.forEach { it.ruleCompleted(sourceName, ruleId, wallTimeNanos, problems) }
+
+            override fun parseCompleted(metrics: ZdlParseMetrics) =
+                instrumentations.forEach { it.parseCompleted(metrics) }
+        }
+    }
+}
+
+/**
+ * Totals of one [ZdlParser] call. Multi-file parses add up the phases and counts of all their files.
+ *
+ * [sllParses] and [llFallbacks] count [ZdlParser.ParseMode.TWO_STAGE] parses and the ones that had to be parsed again
+ * with full LL prediction.
+ */
+class ZdlParseMetrics internal constructor(
+    val sourceName: String,
+    val wallTimeNanos: Map<ZdlParsePhase, Long>,
+    val allocatedBytes: Map<ZdlParsePhase, Long>,
+    val tokens: Int,
+    val parseTreeNodes: Int,
+    val locations: Int,
+    val problems: Int,
+    val sllParses: Int,
+    val llFallbacks: Int,
+) {
+    val totalWallTimeNanos: Long get() = wallTimeNanos.values.sum()
+
+    override fun toString(): String =
+        "ZdlParseMetrics(sourceName=$sourceName, wallTimeNanos=$wallTimeNanos, allocatedBytes=$allocatedBytes, tokens=$tokens, " +
+            "parseTreeNodes=$parseTreeNodes, locations=$locations, problems=$problems, sllParses=$sllParses, llFallbacks=$llFallbacks)"
+}
+
+/** Wall time and allocations since creation, on the current thread. */
+internal class Stopwatch {
+    private val start = TimeSource.Monotonic.markNow()
+    private val startBytes = currentThreadAllocatedBytes()
+
+    val nanos: Long get() = start.elapsedNow().inWholeNanoseconds
+    val bytes: Long get() = if (startBytes < 0) -1 else currentThreadAllocatedBytes() - startBytes
+}
+
+/** Collects the metrics of one parse call, reporting phases to [instrumentation] as they complete. */
+internal class ParseMetricsRecorder(val sourceName: String, val instrumentation: ZdlInstrumentation) {
+    private val wallTimeNanos = LongArray(ZdlParsePhase.entries.size)
+    private val allocatedBytes = LongArray(ZdlParsePhase.entries.size)
+    var tokens = 0
+    var parseTreeNodes = 0
+    var sllParses = 0
+    var llFallbacks = 0
+
+    fun record(phase: ZdlParsePhase, stopwatch: Stopwatch) = record(phase, stopwatch.nanos, stopwatch.bytes)
+
+    fun record(phase: ZdlParsePhase, nanos: Long, bytes: Long) {
+        wallTimeNanos[phase.ordinal] += nanos
+        allocatedBytes[phase.ordinal] = if (bytes < 0 || allocatedBytes[phase.ordinal] < 0) -1 else allocatedBytes[phase.ordinal] + bytes
+        instrumentation.phaseCompleted(sourceName, phase, nanos, bytes)
+    }
+
+    /** Adds up the totals of [other] without reporting its phases again. */
+    fun add(other: ParseMetricsRecorder) {
+        for (i in wallTimeNanos.indices) {
+            wallTimeNanos[i] += other.wallTimeNanos[i]
+            allocatedBytes[i] = if (allocatedBytes[i] < 0 || other.allocatedBytes[i] < 0) -1 else allocatedBytes[i] + other.allocatedBytes[i]
+        }
+        tokens += other.tokens
+        parseTreeNodes += other.parseTreeNodes
+        sllParses += other.sllParses
+        llFallbacks += other.llFallbacks
+    }
+
+    fun complete(model: ZdlModel) {
+        instrumentation.parseCompleted(ZdlParseMetrics(
+            sourceName,
+            ZdlParsePhase.entries.associateWith { wallTimeNanos[it.ordinal] },
+            ZdlParsePhase.entries.associateWith { allocatedBytes[it.ordinal] },
+            tokens, parseTreeNodes, model.getLocations().size, model.getProblems().size, sllParses, llFallbacks
+        ))
+    }
+}
+
+/** Runs [block] recording its wall time and allocations as [phase], when instrumented. */
+internal inline fun <T> ParseMetricsRecorder?.measure(phase: ZdlParsePhase, block: () -> T): T {
+    if (this == null) return block()
+    val stopwatch = Stopwatch()
+    val result = block()
+    record(phase, stopwatch)
+    return result
+}
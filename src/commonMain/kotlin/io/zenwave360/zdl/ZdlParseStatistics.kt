@@ -0,0 +1,24 @@
+package io.zenwave360.zdl
+
+/**
+ * Counters for [ZdlParser.ParseMode.TWO_STAGE] parsing: how many sources were parsed and how many of them
+ * failed the fast SLL stage and had to be re-parsed with full LL prediction. Thread-safe, so one instance can
+ * count the parses of several parsers, see [ZdlParser.withStatistics].
+ */
+class ZdlParseStatistics {
+    private val twoStageParses = counter()
+    private val llFallbacks = counter()
+
+    val parses: Long get() = twoStageParses.get()
+    val fallbacks: Long get() = llFallbacks.get()
+    val fallbackRate: Double get() = parses.let { if (it == 0L) 0.0 else fallbacks.toDouble() / it }
+
+    internal fun recordParse(fallback: Boolean) {
+        twoStageParses.increment()
+        if (fallback) {
+            llFallbacks.increment()
+        }
+    }
+
+    override fun toString(): String = "ZdlParseStatistics(parses=$parses, fallbacks=$fallbacks)"
+}
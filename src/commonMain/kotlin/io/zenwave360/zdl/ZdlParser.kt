@@ -1,11 +1,29 @@
 package io.zenwave360.zdl
 
 import io.zenwave360.zdl.antlr.*
+import org.antlr.v4.kotlinruntime.ANTLRErrorListener
+import org.antlr.v4.kotlinruntime.BailErrorStrategy
+import org.antlr.v4.kotlinruntime.CharStream
 import org.antlr.v4.kotlinruntime.CharStreams
 import org.antlr.v4.kotlinruntime.CommonTokenStream
+import org.antlr.v4.kotlinruntime.DefaultErrorStrategy
+import org.antlr.v4.kotlinruntime.ParserRuleContext
+import org.antlr.v4.kotlinruntime.atn.PredictionMode
+import org.antlr.v4.kotlinruntime.misc.ParseCancellationException
+import org.antlr.v4.kotlinruntime.tree.ErrorNode
+import org.antlr.v4.kotlinruntime.tree.ParseTree
+import org.antlr.v4.kotlinruntime.tree.ParseTreeListener
 import org.antlr.v4.kotlinruntime.tree.ParseTreeWalker
+import org.antlr.v4.kotlinruntime.tree.TerminalNode
 
-class ZdlParser {
+/**
+ * Parses ZDL sources into [ZdlModel]s.
+ *
+ * Instances are immutable: every `with*` method returns a new configured parser, so a single instance can be shared
+ * by any number of threads. Lexer/parser instances are reused per thread, and the ATN/DFA prediction cache is shared
+ * by all of them, so it stays warm across calls.
+ */
+class ZdlParser private constructor(private val settings: Settings) {
 
     companion object {
         val STANDARD_FIELD_TYPES = listOf(
@@ -15,41 +33,421 @@ class ZdlParser {
             "byte", "byte[]", "Blob", "AnyBlob", "ImageBlob", "TextBlob"
         )
         val STANDARD_VALIDATIONS = listOf("required", "unique", "min", "max", "minlength", "maxlength", "pattern")
+
+        private val recognizers = threadLocal { ZdlRecognizers() }
     }
 
-    private var standardFieldTypes: List<String> = STANDARD_FIELD_TYPES
-    private var extraFieldTypes: List<String> = emptyList()
+    enum class ParseMode {
+        /** Full-context LL prediction on every decision. */
+        LL,
+        /**
+         * Parses first with SLL prediction and a bail-out error strategy, and only re-parses with full LL
+         * prediction (and the regular error recovery and reporting) when the SLL stage fails.
+         * Well-formed sources, the common case, never pay for full-context prediction.
+         */
+        TWO_STAGE
+    }
 
-    fun withStandardFieldTypes(standardFieldTypes: List<String>): ZdlParser {
-        this.standardFieldTypes = standardFieldTypes
-        return this
+    private data class Settings(
+        val typeRegistry: ZdlTypeRegistry = ZdlTypeRegistry.STANDARD,
+        val extraFieldTypes: List<String> = emptyList(),
+        val executor: ZdlExecutor = ZdlExecutor.DEFAULT,
+        val validationExecutor: ZdlExecutor = ZdlExecutor.SEQUENTIAL,
+        val validationRules: List<ZdlValidationRule> = ZdlValidationRules.BUILT_IN,
+        val disabledValidationRules: Set<String> = emptySet(),
+        val maxProblems: Int = Int.MAX_VALUE,
+        val failFast: Boolean = false,
+        val parseMode: ParseMode = ParseMode.LL,
+        val streaming: Boolean = false,
+        val locations: Boolean = true,
+        val keepSource: Boolean = false,
+        val importLoader: ZdlImportLoader? = null,
+        val parseCache: ZdlParseCache? = null,
+        val instrumentation: ZdlInstrumentation? = null,
+        val statistics: ZdlParseStatistics = ZdlParseStatistics(),
+    )
+
+    /**
+     * SLL/LL fallback counters for the [ParseMode.TWO_STAGE] parses of this parser and of every parser configured
+     * from it with `with*` methods, unless given their own with [withStatistics].
+     */
+    val statistics: ZdlParseStatistics get() = settings.statistics
+
+    /** [ZdlParser.Settings.typeRegistry] plus the extra field types, built once per parser. */
+    private val fieldTypes by lazy { settings.typeRegistry.withNames(settings.extraFieldTypes) }
+
+    constructor() : this(Settings())
+
+    fun withStandardFieldTypes(standardFieldTypes: List<String>): ZdlParser =
+        ZdlParser(settings.copy(typeRegistry = ZdlTypeRegistry.ofNames(standardFieldTypes)))
+
+    /**
+     * Field types valid without a model definition, replacing the standard ones. Registries are immutable,
+     * so a large one can be built once and shared by every parser.
+     */
+    fun withTypeRegistry(typeRegistry: ZdlTypeRegistry): ZdlParser =
+        ZdlParser(settings.copy(typeRegistry = typeRegistry))
+
+    fun withExtraFieldTypes(extraFieldTypes: List<String>): ZdlParser =
+        ZdlParser(settings.copy(extraFieldTypes = extraFieldTypes))
+
+    /** Executor used by the batch APIs, see [parseModels]. */
+    fun withExecutor(executor: ZdlExecutor): ZdlParser =
+        ZdlParser(settings.copy(executor = executor))
+
+    /**
+     * Executor for the passes of each model validation, sequential by default. Problems are reported in the same order
+     * with any executor. Batch parses already use [withExecutor], so sharing one bounded pool between both can leave
+     * its threads waiting on each other.
+     */
+    fun withValidationExecutor(validationExecutor: ZdlExecutor): ZdlParser =
+        ZdlParser(settings.copy(validationExecutor = validationExecutor))
+
+    /** Validation rules to run, in this order, replacing [ZdlValidationRules.BUILT_IN]. Custom rules go here too. */
+    fun withValidationRules(validationRules: List<ZdlValidationRule>): ZdlParser =
+        ZdlParser(settings.copy(validationRules = validationRules))
+
+    /** Skips the validation rules with these ids, e.g. expensive custom rules on latency sensitive paths. */
+    fun withDisabledValidationRules(ruleIds: Collection<String>): ZdlParser =
+        ZdlParser(settings.copy(disabledValidationRules = ruleIds.toSet()))
+
+    /**
+     * Stops collecting problems after [maxProblems], and validation rules stop looking for more. Badly broken
+     * models can have tens of thousands of problems, when only the first ones will ever be shown.
+     */
+    fun withMaxProblems(maxProblems: Int): ZdlParser {
+        require(maxProblems >= 0) { "maxProblems must not be negative: $maxProblems" }
+        return ZdlParser(settings.copy(maxProblems = maxProblems))
     }
 
-    fun withExtraFieldTypes(extraFieldTypes: List<String>): ZdlParser {
-        this.extraFieldTypes = extraFieldTypes
-        return this
+    /** Stops collecting problems, and validating, at the first error: for callers that only need to know if a model is valid. */
+    fun withFailFast(failFast: Boolean): ZdlParser =
+        ZdlParser(settings.copy(failFast = failFast))
+
+    fun withParseMode(parseMode: ParseMode): ZdlParser =
+        ZdlParser(settings.copy(parseMode = parseMode))
+
+    /** Counts the parses of this parser and the ones configured from it in [statistics], apart from the others. */
+    fun withStatistics(statistics: ZdlParseStatistics): ZdlParser =
+        ZdlParser(settings.copy(statistics = statistics))
+
+    /**
+     * Builds the model while parsing: each top-level definition (entity, service, relationships...) is walked as
+     * soon as it is parsed and then detached from the parse tree, so only one definition subtree is alive at a time
+     * and peak memory follows the size of the model rather than the size of the whole parse tree.
+     */
+    fun withStreaming(streaming: Boolean): ZdlParser =
+        ZdlParser(settings.copy(streaming = streaming))
+
+    /**
+     * Whether to record the source location of each element, true by default. Code generators and CI builds that
+     * never read locations can turn them off, saving the location paths and arrays. Models parsed without locations
+     * have problems without `location`, and re-parsing them after an edit parses the whole source.
+     */
+    fun withLocations(locations: Boolean): ZdlParser =
+        ZdlParser(settings.copy(locations = locations))
+
+    /**
+     * Whether models parsed from a String keep it as [ZdlModel.source], false by default. Editors re-parsing models
+     * after each edit with [parseModel] can keep it there instead of passing it on every call.
+     */
+    fun withKeepSource(keepSource: Boolean): ZdlParser =
+        ZdlParser(settings.copy(keepSource = keepSource))
+
+    /**
+     * Reports wall time and allocated bytes of each parse phase, and counts of tokens, parse tree nodes, locations,
+     * problems and SLL/LL fallbacks, to [instrumentation]. Measuring lexing on its own makes the lexer run ahead of
+     * the parser, and counting parse tree nodes walks the tree once more.
+     */
+    fun withInstrumentation(instrumentation: ZdlInstrumentation?): ZdlParser =
+        ZdlParser(settings.copy(instrumentation = instrumentation))
+
+    /** Loader for `@import`ed sources, see [parseModelWithImports]. */
+    fun withImportLoader(importLoader: ZdlImportLoader): ZdlParser =
+        ZdlParser(settings.copy(importLoader = importLoader))
+
+    /**
+     * Cache for parsed `@import`ed sources shared by the [parseModelWithImports] calls of this parser, such as
+     * [ZdlParseCache.SHARED]. None by default: each call parses every file it imports once.
+     */
+    fun withParseCache(parseCache: ZdlParseCache?): ZdlParser =
+        ZdlParser(settings.copy(parseCache = parseCache))
+
+    fun parseModel(model: String): ZdlModel =
+        process(parseSource(CharStreams.fromString(model))).also { keepSource(it, model) }
+
+    /** Re-parses [previousModel] after applying [edit] to its [ZdlModel.source], kept with [withKeepSource]. */
+    fun parseModel(previousModel: ZdlModel, edit: ZdlTextEdit): ZdlModel {
+        val previousSource = requireNotNull(previousModel.source) { "Model source was not kept, see withKeepSource()" }
+        return parseModel(previousModel, previousSource, edit)
+    }
+
+    /**
+     * Re-parses [previousModel], parsed from [previousSource], after applying [edit] to it.
+     *
+     * When the edit falls inside a single top-level definition (entity, enum, input, output, event, aggregate,
+     * service or relationships block), only that definition is parsed again and spliced into the previous model,
+     * otherwise the whole source is parsed. Spliced models are also validated incrementally: only the definitions
+     * of the edited block and those referencing them are validated again. Either way the result is equal to parsing
+     * the edited source from scratch. [previousModel] is left as it was, sharing its unchanged elements with the
+     * returned model.
+     */
+    fun parseModel(previousModel: ZdlModel, previousSource: String, edit: ZdlTextEdit): ZdlModel {
+        val source = edit.applyTo(previousSource)
+        var snippet: ParsedSource? = null
+        val incrementalParser = ZdlIncrementalParser { text ->
+            parseSource(CharStreams.fromString(text)).takeIf { it.isClean }?.also { snippet = it }?.model
+        }
+        val model = incrementalParser.splice(previousModel, previousSource, edit, source)
+            ?: return parseModel(source)
+        return process(ParsedSource(model, 0, 0, snippet?.metrics), previousModel).also { keepSource(it, source) }
     }
 
-    fun parseModel(model: String): ZdlModel {
-        val zdl = CharStreams.fromString(model)
-        val lexer = ZdlLexer(zdl)
-        val tokens = CommonTokenStream(lexer)
-        val parser = io.zenwave360.zdl.antlr.ZdlParser(tokens)
-        val listener = ZdlListenerImpl()
-        val zdlRoot = parser.zdl()
-        ParseTreeWalker.DEFAULT.walk(listener, zdlRoot)
+    private fun keepSource(model: ZdlModel, source: String) {
+        if (settings.keepSource) model.source = source
+    }
 
-        var zdlModel = listener.model
-        zdlModel = ZdlModelPostProcessor.postProcess(zdlModel)
-        try {
-            zdlModel = ZdlModelValidator()
-                .withStandardFieldTypes(standardFieldTypes)
-                .withExtraFieldTypes(extraFieldTypes)
-                .validate(zdlModel)
-        } catch (e: Exception) {
-            e.printStackTrace()
+    /** Parses each source independently, concurrently when the configured executor allows it, keeping input order. */
+    fun parseModels(models: List<String>): List<ZdlModel> =
+        settings.executor.invokeAll(models.map { model -> { parseModel(model) } })
+
+    /**
+     * Parses several files, concurrently when the configured executor allows it, and merges them into one model
+     * that is post-processed and validated as a whole, so definitions can reference each other across files.
+     *
+     * Files are merged in path order regardless of the map ordering. Problems carry the `file` they were found in,
+     * and their `path` is qualified as `file#path`. A definition replaced by one with the same name in a later file
+     * is reported as a `duplicate` warning naming both files.
+     */
+    fun parseModels(models: Map<String, String>): ZdlModel {
+        val files = models.keys.sorted()
+        val parsed = settings.executor.invokeAll(files.map { file -> { parseRawSource(ZdlSource(file, models.getValue(file))) } })
+        val metrics = settings.instrumentation?.let { ParseMetricsRecorder(files.joinToString(","), it) }
+        parsed.forEach { it.metrics?.let { fileMetrics -> metrics?.add(fileMetrics) } }
+        val merged = ZdlModelMerger.merge(files.zip(parsed.map { it.model }))
+        return process(ParsedSource(merged.model, 0, 0, metrics)).also { addDuplicates(it, merged.duplicates) }
+    }
+
+    /** Loads [path] with the configured import loader and parses it along with its imports. */
+    fun parseModelWithImports(path: String): ZdlModel {
+        val source = importLoader().load(path, null) ?: throw IllegalArgumentException("Could not load $path")
+        return parseModelWithImports(source)
+    }
+
+    /**
+     * Parses [source] along with its transitive `@import`s, loaded with the configured import loader and merged as
+     * in [parseModels] so they are validated together.
+     *
+     * Imports are loaded and parsed in parallel, one level of the import graph at a time, and parsed imports are
+     * kept in the configured [ZdlParseCache], if any. Unresolved imports and import cycles are reported as problems.
+     */
+    fun parseModelWithImports(source: ZdlSource): ZdlModel {
+        var rootSource: ParsedSource? = null
+        val cache = settings.parseCache
+        val resolver = ZdlImportResolver(importLoader(), settings.executor) { importedSource ->
+            when {
+                importedSource == source -> parseRawSource(importedSource).also { rootSource = it }.model
+                cache == null -> parseRawSource(importedSource).model
+                else -> cache.getOrParse(importedSource.content, settings.locations) { parseRawSource(importedSource).model }
+            }
+        }
+        val resolution = resolver.resolve(source)
+        // imports come from the cache, only the root source is measured
+        val model = process(ParsedSource(resolution.model, 0, 0, rootSource?.metrics))
+        for (problem in resolution.problems) {
+            model.problemCollector.add(problem.path, problem.import, problem.message, code = "import")
+        }
+        addDuplicates(model, resolution.duplicates)
+        return model
+    }
+
+    /** Definitions replaced by a later file are reported on the definition kept, which may be intended. */
+    private fun addDuplicates(model: ZdlModel, duplicates: List<ZdlModelMerger.Duplicate>) {
+        for (duplicate in duplicates) {
+            model.problemCollector.add(duplicate.path, duplicate.name,
+                "%s is defined in both ${duplicate.file} and ${duplicate.replacedBy}, the definition in ${duplicate.replacedBy} is used",
+                ZdlProblemSeverity.WARNING, "duplicate")
+        }
+    }
+
+    private fun importLoader(): ZdlImportLoader =
+        settings.importLoader ?: throw IllegalStateException("No import loader configured, see withImportLoader()")
+
+    private fun parseRawSource(source: ZdlSource): ParsedSource =
+        parseSource(CharStreams.fromString(source.content, source.path))
+
+    internal fun parseModel(input: CharStream): ZdlModel = process(parseSource(input))
+
+    private class ParsedSource(val model: ZdlModel, val syntaxErrors: Int, val unrecognizedChars: Int, val metrics: ParseMetricsRecorder?) {
+        val isClean: Boolean get() = syntaxErrors == 0 && unrecognizedChars == 0
+    }
+
+    private fun parseSource(input: CharStream): ParsedSource {
+        val metrics = settings.instrumentation?.let { ParseMetricsRecorder(input.sourceName, it) }
+        var listener = ZdlListenerImpl(settings.locations)
+        return withRecognizers(input) { recognizers ->
+            val parser = recognizers.parser
+            val streamingWalker = if (settings.streaming) TopLevelWalker(metrics) { listener }.also { parser.addParseListener(it) } else null
+            try {
+                if (metrics != null) {
+                    metrics.measure(ZdlParsePhase.LEXING) { recognizers.fillTokens() }
+                }
+                val parsing = metrics?.let { Stopwatch() }
+                val zdlRoot = when (settings.parseMode) {
+                    ParseMode.LL -> parser.zdl()
+                    ParseMode.TWO_STAGE -> parseTwoStage(recognizers, metrics) { listener = ZdlListenerImpl(settings.locations) }
+                }
+                if (metrics != null && parsing != null) {
+                    // streaming walks are part of parsing, reported on their own
+                    val walk = streamingWalker?.walkTime
+                    metrics.record(ZdlParsePhase.PARSING, parsing.nanos - (walk?.first ?: 0), parsing.bytes.let { if (it < 0 || walk == null) it else it - walk.second })
+                    walk?.let { metrics.record(ZdlParsePhase.TREE_WALK, it.first, it.second) }
+                    metrics.tokens = recognizers.tokenCount()
+                    metrics.parseTreeNodes += countNodes(zdlRoot)
+                }
+                if (streamingWalker == null) {
+                    metrics.measure(ZdlParsePhase.TREE_WALK) { ParseTreeWalker.DEFAULT.walk(listener, zdlRoot) }
+                }
+                ParsedSource(listener.model, parser.numberOfSyntaxErrors, recognizers.unrecognizedChars(), metrics)
+            } finally {
+                streamingWalker?.let { parser.removeParseListener(it) }
+            }
         }
+    }
+
+    /** Post-processes and validates, incrementally against [previous] when this is a new version of it. */
+    private fun process(parsed: ParsedSource, previous: ZdlModel? = null): ZdlModel {
+        val metrics = parsed.metrics
+        var zdlModel = metrics.measure(ZdlParsePhase.POST_PROCESSING) { ZdlModelPostProcessor.postProcess(parsed.model) }
+        zdlModel.problemCollector.maxProblems = settings.maxProblems
+        zdlModel.problemCollector.failFast = settings.failFast
+        zdlModel = metrics.measure(ZdlParsePhase.VALIDATION) {
+            ZdlModelValidator()
+                .withTypeRegistry(fieldTypes)
+                .withExecutor(settings.validationExecutor)
+                .withRules(settings.validationRules)
+                .withDisabledRules(settings.disabledValidationRules)
+                .withInstrumentation(metrics?.instrumentation, metrics?.sourceName ?: "")
+                .validate(zdlModel, previous)
+        }
+        metrics?.complete(zdlModel)
         return zdlModel
     }
+
+    private fun parseTwoStage(recognizers: ZdlRecognizers, metrics: ParseMetricsRecorder?, onFallback: () -> Unit): io.zenwave360.zdl.antlr.ZdlParser.ZdlContext {
+        val parser = recognizers.parser
+        metrics?.let { it.sllParses++ }
+        try {
+            val zdlRoot = recognizers.withSllPrediction { parser.zdl() }
+            statistics.recordParse(fallback = false)
+            return zdlRoot
+        } catch (e: ParseCancellationException) {
+            statistics.recordParse(fallback = true)
+            metrics?.let { it.llFallbacks++; it.parseTreeNodes = 0 }
+            onFallback()
+            parser.reset() // rewinds the already buffered tokens
+            return parser.zdl()
+        }
+    }
+
+    private inline fun <T> withRecognizers(input: CharStream, block: (ZdlRecognizers) -> T): T {
+        val pooled = recognizers()
+        // reentrant calls on the same thread get their own short-lived recognizers
+        val current = if (pooled.inUse) ZdlRecognizers() else pooled
+        current.inUse = true
+        try {
+            return block(current.reset(input))
+        } finally {
+            current.release()
+        }
+    }
 }
 
+/**
+ * Parse listener walking each top-level definition with the current model listener as soon as it is parsed,
+ * and then removing it from the parse tree.
+ */
+private class TopLevelWalker(private val metrics: ParseMetricsRecorder?, private val listener: () -> ZdlListenerImpl) : ParseTreeListener {
+    private var walkNanos = 0L
+    private var walkBytes = 0L
+
+    /** Wall time and allocated bytes spent walking, when instrumented. */
+    val walkTime: Pair<Long, Long> get() = walkNanos to walkBytes
+
+    override fun exitEveryRule(ctx: ParserRuleContext) {
+        val parent = ctx.getParent()
+        if (parent is io.zenwave360.zdl.antlr.ZdlParser.ZdlContext) {
+            if (metrics == null) {
+                ParseTreeWalker.DEFAULT.walk(listener(), ctx)
+            } else {
+                val stopwatch = Stopwatch()
+                ParseTreeWalker.DEFAULT.walk(listener(), ctx)
+                walkNanos += stopwatch.nanos
+                walkBytes = stopwatch.bytes.let { if (it < 0 || walkBytes < 0) -1 else walkBytes + it }
+                metrics.parseTreeNodes += countNodes(ctx)
+            }
+            parent.removeLastChild()
+        }
+    }
+
+    override fun enterEveryRule(ctx: ParserRuleContext) {}
+    override fun visitTerminal(node: TerminalNode) {}
+    override fun visitErrorNode(node: ErrorNode) {}
+}
+
+private fun countNodes(tree: ParseTree): Int {
+    var count = 1
+    for (i in 0 until tree.childCount) {
+        count += countNodes(tree.getChild(i)!!)
+    }
+    return count
+}
+
+/**
+ * Lexer, token stream and parser bound together so they can be reset and reused for the next input.
+ */
+internal class ZdlRecognizers {
+    private val lexer = ZdlLexer(CharStreams.fromString(""))
+    private val tokens = CommonTokenStream(lexer)
+    val parser = io.zenwave360.zdl.antlr.ZdlParser(tokens)
+    var inUse = false
+
+    fun reset(input: CharStream): ZdlRecognizers {
+        lexer.inputStream = input
+        tokens.tokenSource = lexer
+        parser.tokenStream = tokens
+        return this
+    }
+
+    /** Runs [block] with SLL prediction, bailing out on the first syntax error without reporting it. */
+    inline fun <T> withSllPrediction(block: () -> T): T {
+        val errorListeners: List<ANTLRErrorListener> = parser.errorListeners.toList()
+        parser.removeErrorListeners()
+        parser.errorHandler = BailErrorStrategy()
+        parser.interpreter.predictionMode = PredictionMode.SLL
+        try {
+            return block()
+        } finally {
+            parser.interpreter.predictionMode = PredictionMode.LL
+            parser.errorHandler = DefaultErrorStrategy()
+            errorListeners.forEach { parser.addErrorListener(it) }
+        }
+    }
+
+    /** Lexes the whole input ahead of the parser. */
+    fun fillTokens() = tokens.fill()
+
+    fun tokenCount(): Int = tokens.size()
+
+    /** Characters the lexer could not match to any token, silently sent to the hidden channel. */
+    fun unrecognizedChars(): Int {
+        val errChar = lexer.getTokenType("ERRCHAR")
+        return tokens.tokens.count { it.type == errChar }
+    }
+
+    /** Drops references to the last input and its tokens so they are not retained by the pooled instances. */
+    fun release() {
+        reset(CharStreams.fromString(""))
+        inUse = false
+    }
+}
@@ -0,0 +1,18 @@
+package io.zenwave360.zdl
+
+/**
+ * Replacement of [length] characters at [offset] with [replacement], as reported by editors on each keystroke.
+ */
+data class ZdlTextEdit(val offset: Int, val length: Int, val replacement: String) {
+
+    init {
+        require(offset >= 0 && length >= 0) { "Invalid edit range: offset=$offset length=$length" }
+    }
+
+    val end: Int get() = offset + length
+
+    fun applyTo(source: String): String {
+        require(end <= source.length) { "Edit range $offset..$end is outside of the source (length=${source.length})" }
+        return source.substring(0, offset) + replacement + source.substring(end)
+    }
+}
@@ -0,0 +1,91 @@
+package io.zenwave360.zdl
+
+/** Broad kind of value a field type holds, for generators that treat similar types alike. */
+enum class ZdlTypeCategory {
+    STRING, NUMBER, BOOLEAN, TEMPORAL, IDENTIFIER, BINARY, ENUM, MAP, OTHER
+}
+
+/** A field type that is valid without being defined in the model, with the Java type it maps to when known. */
+data class ZdlFieldType(
+    val name: String,
+    val category: ZdlTypeCategory = ZdlTypeCategory.OTHER,
+    val javaType: String? = null,
+)
+
+/**
+ * Field types the validator accepts without a model definition, looked up by name in constant time.
+ *
+ * Registries are immutable, so one instance can be shared by any number of parsers and threads;
+ * [with] and [withNames] return extended copies.
+ */
+class ZdlTypeRegistry private constructor(private val types: Map<String, ZdlFieldType>) {
+
+    val size: Int get() = types.size
+
+    val names: Set<String> get() = types.keys
+
+    val fieldTypes: Collection<ZdlFieldType> get() = types.values
+
+    operator fun contains(name: String?): Boolean = name != null && types.containsKey(name)
+
+    operator fun get(name: String?): ZdlFieldType? = if (name == null) null else types[name]
+
+    fun byCategory(category: ZdlTypeCategory): List<ZdlFieldType> = types.values.filter { it.category == category }
+
+    /** This registry plus [fieldTypes], which replace registered types of the same name. */
+    fun with(fieldTypes: Collection<ZdlFieldType>): ZdlTypeRegistry {
+        if (fieldTypes.isEmpty()) return this
+        val copy = LinkedHashMap(types)
+        for (type in fieldTypes) copy[type.name] = type
+        return ZdlTypeRegistry(copy)
+    }
+
+    fun with(vararg fieldTypes: ZdlFieldType): ZdlTypeRegistry = with(fieldTypes.asList())
+
+    /** This registry plus the [names] it does not have yet, in [category]. */
+    fun withNames(names: Collection<String>, category: ZdlTypeCategory = ZdlTypeCategory.OTHER): ZdlTypeRegistry =
+        with(names.filter { it !in this }.map { ZdlFieldType(it, category) })
+
+    override fun toString() = "ZdlTypeRegistry$names"
+
+    companion object {
+        val EMPTY = ZdlTypeRegistry(emptyMap())
+
+        /** The types of [ZdlParser.STANDARD_FIELD_TYPES]. */
+        val STANDARD: ZdlTypeRegistry = EMPTY.with(
+            ZdlFieldType("String", ZdlTypeCategory.STRING, "java.lang.String"),
+            ZdlFieldType("Integer", ZdlTypeCategory.NUMBER, "java.lang.Integer"),
+            ZdlFieldType("Long", ZdlTypeCategory.NUMBER, "java.lang.Long"),
+            ZdlFieldType("int", ZdlTypeCategory.NUMBER, "int"),
+            ZdlFieldType("long", ZdlTypeCategory.NUMBER, "long"),
+            ZdlFieldType("BigDecimal", ZdlTypeCategory.NUMBER, "java.math.BigDecimal"),
+            ZdlFieldType("Float", ZdlTypeCategory.NUMBER, "java.lang.Float"),
+            ZdlFieldType("float", ZdlTypeCategory.NUMBER, "float"),
+            ZdlFieldType("Double", ZdlTypeCategory.NUMBER, "java.lang.Double"),
+            ZdlFieldType("double", ZdlTypeCategory.NUMBER, "double"),
+            ZdlFieldType("Enum", ZdlTypeCategory.ENUM, "java.lang.Enum"),
+            ZdlFieldType("Boolean", ZdlTypeCategory.BOOLEAN, "java.lang.Boolean"),
+            ZdlFieldType("boolean", ZdlTypeCategory.BOOLEAN, "boolean"),
+            ZdlFieldType("Map", ZdlTypeCategory.MAP, "java.util.Map"),
+            ZdlFieldType("LocalDate", ZdlTypeCategory.TEMPORAL, "java.time.LocalDate"),
+            ZdlFieldType("LocalDateTime", ZdlTypeCategory.TEMPORAL, "java.time.LocalDateTime"),
+            ZdlFieldType("ZonedDate", ZdlTypeCategory.TEMPORAL),
+            ZdlFieldType("ZonedDateTime", ZdlTypeCategory.TEMPORAL, "java.time.ZonedDateTime"),
+            ZdlFieldType("Instant", ZdlTypeCategory.TEMPORAL, "java.time.Instant"),
+            ZdlFieldType("Duration", ZdlTypeCategory.TEMPORAL, "java.time.Duration"),
+            ZdlFieldType("UUID", ZdlTypeCategory.IDENTIFIER, "java.util.UUID"),
+            ZdlFieldType("byte", ZdlTypeCategory.NUMBER, "byte"),
+            ZdlFieldType("byte[]", ZdlTypeCategory.BINARY, "byte[]"),
+            ZdlFieldType("Blob", ZdlTypeCategory.BINARY, "byte[]"),
+            ZdlFieldType("AnyBlob", ZdlTypeCategory.BINARY, "byte[]"),
+            ZdlFieldType("ImageBlob", ZdlTypeCategory.BINARY, "byte[]"),
+            ZdlFieldType("TextBlob", ZdlTypeCategory.STRING, "java.lang.String"),
+        )
+
+        fun of(fieldTypes: Collection<ZdlFieldType>): ZdlTypeRegistry = EMPTY.with(fieldTypes)
+
+        /** A registry of [names], keeping the [STANDARD] metadata of the standard ones. */
+        fun ofNames(names: Collection<String>): ZdlTypeRegistry =
+            of(names.map { STANDARD[it] ?: ZdlFieldType(it) })
+    }
+}
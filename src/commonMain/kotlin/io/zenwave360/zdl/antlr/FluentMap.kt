@@ -7,6 +7,9 @@ class FluentMap private constructor(
     companion object {
         fun build(block: FluentMap.() -> Unit = {}): FluentMap =
             FluentMap(linkedMapOf()).apply(block)
+
+        /** A FluentMap over [backingMap], which it reads and writes through. */
+        internal fun wrap(backingMap: MutableMap<String, Any?>): FluentMap = FluentMap(backingMap)
     }
 
     // Provide access to underlying Java Map (useful for JSONPath on JVM)
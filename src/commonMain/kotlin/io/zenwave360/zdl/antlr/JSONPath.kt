@@ -1,34 +1,120 @@
 package io.zenwave360.zdl.antlr
 
+import io.zenwave360.zdl.concurrentCache
+
 object JSONPath {
-    fun <T> get(source: Any?, path: String): T? = get(source, path, null)
 
-    @Suppress("UNCHECKED_CAST")
-    fun <T> get(source: Any?, path: String, defaultValue: T): T {
-        if (source == null) return defaultValue
+    /** Maximum number of compiled expressions kept by [get] when called with a path string. */
+    const val CACHE_SIZE = 1024
+
+    private val cache = concurrentCache<String, Compiled>(CACHE_SIZE)
 
-        // Normalize path: remove leading "$." if present, or just "$" if that's all
-        val normalizedPath = when {
-            path.startsWith("$..") -> path.substring(1)
-            path.startsWith("$.") -> path.substring(2)
-            path.startsWith("$") -> path.substring(1)
-            else -> path
+    /** A parsed path expression that can be evaluated many times without being tokenized again. */
+    class Compiled internal constructor(val path: String, segments: List<String>) {
+        internal val size = segments.size
+        internal val kinds = IntArray(size)
+        internal val keys = arrayOfNulls<String>(size)
+        internal val indexes = IntArray(size)
+        internal val firstWildcard: Int
+        internal val descents: Int
+
+        init {
+            for ((i, segment) in segments.withIndex()) {
+                when {
+                    segment == ".." -> kinds[i] = DESCENT
+                    segment == "[*]" -> kinds[i] = WILDCARD
+                    segment.startsWith("[") && segment.endsWith("]") -> {
+                        kinds[i] = INDEX
+                        // not a number: matches no list element
+                        indexes[i] = segment.removeSurrounding("[", "]").toIntOrNull() ?: -1
+                    }
+                    else -> keys[i] = segment
+                }
+            }
+            firstWildcard = kinds.indexOfFirst { it >= WILDCARD }
+            descents = kinds.count { it == DESCENT }
         }
 
-        // Split path into segments
-        val segments = parsePath(normalizedPath)
+        override fun toString() = path
+    }
+
+    /** Parses [path] once, for constant expressions that are evaluated repeatedly. */
+    fun compile(path: String): Compiled = Compiled(path, parsePath(normalize(path)))
+
+    internal fun compiled(path: String): Compiled = cache.getOrPut(path) { compile(path) }
+
+    internal val cachedPaths: Int get() = cache.size
 
+    fun clearCache() = cache.clear()
+
+    fun <T> get(source: Any?, path: String): T? = get(source, compiled(path), null)
+
+    fun <T> get(source: Any?, path: String, defaultValue: T): T = get(source, compiled(path), defaultValue)
+
+    fun <T> get(source: Any?, path: Compiled): T? = get(source, path, null)
+
+    @Suppress("UNCHECKED_CAST")
+    fun <T> get(source: Any?, path: Compiled, defaultValue: T): T {
+        if (source == null) return defaultValue
         try {
-            val result = evaluatePath(source, segments)
-//            if(segments.last() == "[*]" && result is Map<*, *>) {
-//                return result.values.toList() as? T ?: defaultValue
-//            }
+            val result = evaluate(source, path)
             return result as? T ?: defaultValue
         } catch (e: Exception) {
             return defaultValue
         }
     }
 
+    /**
+     * Adds every match of [path] to [sink] and returns it, so one collection can be reused across queries.
+     * Unlike [get], a list found at the end of a path adds its elements instead of itself.
+     */
+    fun <C : MutableCollection<Any?>> collect(source: Any?, path: Compiled, sink: C): C {
+        if (source != null) {
+            try {
+                match(source, path, 0, 1, sink)
+            } catch (e: Exception) {
+                // same as get: a model that does not fit the path has no matches
+            }
+        }
+        return sink
+    }
+
+    /**
+     * Lazily yields the same matches as [collect], walking the model only as far as the caller iterates,
+     * so queries that stop at the first match or handle one match at a time never hold the whole result.
+     * The model may be modified between elements, as long as maps still being walked keep their keys.
+     */
+    fun stream(source: Any?, path: String): Sequence<Any?> = stream(source, compiled(path))
+
+    fun stream(source: Any?, path: Compiled): Sequence<Any?> =
+        if (source == null) emptySequence() else sequence { yieldMatches(source, path, 0, 1) }
+
+    /**
+     * Evaluates several paths in one walk of [source], sharing the lookups of common prefixes and wildcards,
+     * and returns each result, the same [get] would return, keyed by expression.
+     */
+    fun getAll(source: Any?, paths: Collection<String>): Map<String, Any?> = getAll(source, paths.map { compiled(it) })
+
+    fun getAll(source: Any?, paths: List<Compiled>): Map<String, Any?> {
+        val batch = Batch(paths.distinctBy { it.path })
+        if (source != null) {
+            try {
+                batch.run(source)
+            } catch (e: Exception) {
+                // same as get: a model that does not fit the paths has no matches
+            }
+        }
+        return batch.results()
+    }
+
+    // Normalize path: remove leading "$." if present, or just "$" if that's all
+    private fun normalize(path: String): String = when {
+        path.startsWith("$..") -> path.substring(1)
+        path.startsWith("$.") -> path.substring(2)
+        path.startsWith("$") -> path.substring(1)
+        else -> path
+    }
+
     private fun parsePath(path: String): List<String> {
         if (path.isEmpty()) return emptyList()
         
@@ -87,104 +173,223 @@ object JSONPath {
         return segments
     }
 
-    private fun evaluatePath(current: Any?, segments: List<String>): Any? {
-        if (current == null || segments.isEmpty()) return current
+    private const val NAME = 0
+    private const val INDEX = 1
+    private const val WILDCARD = 2
+    private const val DESCENT = 3
 
-        val segment = segments.first()
-        val remaining = segments.drop(1)
+    /*
+     * Evaluation walks the compiled segments with an index cursor and writes matches straight into one sink.
+     * The only lists allocated are the result itself and, for wildcard paths, the iterators over the model.
+     *
+     * A wildcard step produces a list that every enclosing wildcard flattens one more level (`..` flattens twice),
+     * so instead of building those lists, `flatten` counts how many levels each match still has to be flattened.
+     */
 
-        val result = when {
-            segment == ".." -> {
-                // Recursive descent - collect all matching paths
-                val results = mutableListOf<Any?>()
-                
-                // If there are remaining segments, apply them recursively
-                if (remaining.isNotEmpty()) {
-                    collectRecursive(current, remaining, results)
-                } else {
-                    // If no remaining segments, return current
-                    results.add(current)
-                }
-                
-                results.flatMap { result ->
-                    when (result) {
-                        is List<*> -> result
-                        else -> listOf(result)
-                    }
-                }
+    private fun evaluate(source: Any, path: Compiled): Any? {
+        var current: Any? = source
+        var i = 0
+        while (i < path.size && path.kinds[i] < WILDCARD) {
+            current = step(current, path, i) ?: return null
+            i++
+        }
+        if (i == path.size) return current
+        val last = i + 1 == path.size
+        return when {
+            path.kinds[i] == WILDCARD && last && current is List<*> -> current
+            path.kinds[i] == WILDCARD && last && current is Map<*, *> -> current.values.toList()
+            path.kinds[i] == WILDCARD && current !is List<*> && current !is Map<*, *> -> null
+            else -> ArrayList<Any?>().also { wildcard(current!!, path, i, 0, it) }
+        }
+    }
+
+    private fun step(current: Any?, path: Compiled, i: Int): Any? = when {
+        path.kinds[i] == NAME && current is Map<*, *> -> current[path.keys[i]]
+        path.kinds[i] == INDEX && current is List<*> -> current.getOrNull(path.indexes[i])
+        else -> null
+    }
+
+    /** Adds the value of [path] from segment [i] on, flattened [flatten] levels, unless it is null. */
+    private fun match(current: Any?, path: Compiled, i: Int, flatten: Int, sink: MutableCollection<Any?>) {
+        if (current == null) return
+        if (i == path.size) {
+            addFlattened(current, flatten, sink)
+        } else if (path.kinds[i] < WILDCARD) {
+            match(step(current, path, i), path, i + 1, flatten, sink)
+        } else {
+            wildcard(current, path, i, flatten - 1, sink)
+        }
+    }
+
+    /** Adds the elements of the list a wildcard at segment [i] evaluates to, each flattened [flatten] levels. */
+    private fun wildcard(current: Any, path: Compiled, i: Int, flatten: Int, sink: MutableCollection<Any?>) {
+        val last = i + 1 == path.size
+        if (path.kinds[i] == WILDCARD) {
+            val children = when (current) {
+                is List<*> -> current
+                is Map<*, *> -> current.values
+                else -> return
             }
-            segment == "[*]" -> {
-                when (current) {
-                    is List<*> -> {
-                        if (remaining.isEmpty()) current
-                        else {
-                            val results = current.mapNotNull { evaluatePath(it, remaining) }
-                            results.flatMap { result ->
-                                when (result) {
-                                    is List<*> -> result
-                                    else -> listOf(result)
-                                }
-                            }
-                        }
-                    }
-                    is Map<*, *> -> {
-                        if (remaining.isEmpty()) current.values.toList()
-                        else {
-                            val results = current.values.mapNotNull { evaluatePath(it, remaining) }
-                            results.flatMap { result ->
-                                when (result) {
-                                    is List<*> -> result
-                                    else -> listOf(result)
-                                }
-                            }
-                        }
-                    }
-                    else -> null
-                }
+            for (child in children) {
+                if (last) addFlattened(child, flatten, sink) else match(child, path, i + 1, flatten + 1, sink)
             }
-            segment.startsWith("[") && segment.endsWith("]") -> {
-                val index = segment.removeSurrounding("[", "]").toIntOrNull()
-                when {
-                    index != null && current is List<*> -> {
-                        evaluatePath(current.getOrNull(index), remaining)
-                    }
-                    else -> null
+        } else if (last) {
+            addFlattened(current, flatten + 1, sink)
+        } else {
+            descend(current, path, i + 1, flatten + 2, sink)
+        }
+    }
+
+    private fun descend(current: Any?, path: Compiled, i: Int, flatten: Int, sink: MutableCollection<Any?>) {
+        if (current == null) return
+        match(current, path, i, flatten, sink)
+        when (current) {
+            is Map<*, *> -> for (value in current.values) descend(value, path, i, flatten, sink)
+            is List<*> -> for (item in current) descend(item, path, i, flatten, sink)
+        }
+    }
+
+    private fun addFlattened(value: Any?, flatten: Int, sink: MutableCollection<Any?>) {
+        if (flatten > 0 && value is List<*>) {
+            for (item in value) addFlattened(item, flatten - 1, sink)
+        } else {
+            sink.add(value)
+        }
+    }
+
+    // the lazy counterparts of match, wildcard, descend and addFlattened
+
+    private suspend fun SequenceScope<Any?>.yieldMatches(current: Any?, path: Compiled, i: Int, flatten: Int) {
+        if (current == null) return
+        if (i == path.size) {
+            yieldFlattened(current, flatten)
+        } else if (path.kinds[i] < WILDCARD) {
+            yieldMatches(step(current, path, i), path, i + 1, flatten)
+        } else {
+            val last = i + 1 == path.size
+            if (path.kinds[i] == WILDCARD) {
+                val children = when (current) {
+                    is List<*> -> current
+                    is Map<*, *> -> current.values
+                    else -> return
                 }
-            }
-            else -> {
-                when (current) {
-                    is Map<*, *> -> evaluatePath(current[segment], remaining)
-                    else -> null
+                for (child in children) {
+                    if (last) yieldFlattened(child, flatten - 1) else yieldMatches(child, path, i + 1, flatten)
                 }
+            } else if (last) {
+                yieldFlattened(current, flatten)
+            } else {
+                yieldDescendants(current, path, i + 1, flatten + 1)
             }
         }
-        return result
     }
 
-    private fun collectRecursive(current: Any?, segments: List<String>, results: MutableList<Any?>) {
+    private suspend fun SequenceScope<Any?>.yieldDescendants(current: Any?, path: Compiled, i: Int, flatten: Int) {
         if (current == null) return
-        
-        // Try to evaluate the path from current position
-        val directResult = evaluatePath(current, segments)
-        if (directResult != null) {
-            when (directResult) {
-                is List<*> -> results.addAll(directResult)
-                else -> results.add(directResult)
+        yieldMatches(current, path, i, flatten)
+        when (current) {
+            is Map<*, *> -> for (value in current.values) yieldDescendants(value, path, i, flatten)
+            is List<*> -> for (item in current) yieldDescendants(item, path, i, flatten)
+        }
+    }
+
+    private suspend fun SequenceScope<Any?>.yieldFlattened(value: Any?, flatten: Int) {
+        if (flatten > 0 && value is List<*>) {
+            for (item in value) yieldFlattened(item, flatten - 1)
+        } else {
+            yield(value)
+        }
+    }
+
+    /** A path of a [Batch] at segment [segment] of one node, [descending] to every node below it when set. */
+    private class Cursor(val path: Int, val segment: Int, val flatten: Int, val descending: Boolean = false)
+
+    /**
+     * Moves the cursors of all paths together through the model: at each node every cursor takes its step,
+     * cursors looking up the same key share the child lookup and wildcards share one pass over the children.
+     * Recursive descents move on to the children after all other cursors, so each path finds its matches
+     * in the same order [get] does. That only holds for a single `..`, longer paths run on their own.
+     */
+    private class Batch(val paths: List<Compiled>) {
+        private val results = arrayOfNulls<Any?>(paths.size)
+
+        fun run(source: Any) {
+            val cursors = ArrayList<Cursor>(paths.size)
+            for ((p, path) in paths.withIndex()) {
+                if (path.descents > 1) results[p] = evaluate(source, path) else cursors.add(Cursor(p, 0, 1))
             }
+            walk(source, cursors)
         }
-        
-        // Recursively search in children
-        when (current) {
-            is Map<*, *> -> {
-                current.values.forEach { value ->
-                    collectRecursive(value, segments, results)
-                }
+
+        fun results(): Map<String, Any?> = paths.indices.associate { paths[it].path to results[it] }
+
+        private fun walk(node: Any?, cursors: List<Cursor>) {
+            if (node == null || cursors.isEmpty()) return
+            val steps = Steps()
+            for (cursor in cursors) expand(node, cursor, steps)
+            steps.byKey?.forEach { (key, next) ->
+                walk(if (key is Int) (node as List<*>).getOrNull(key) else (node as Map<*, *>)[key], next)
             }
-            is List<*> -> {
-                current.forEach { item ->
-                    collectRecursive(item, segments, results)
-                }
+            steps.children?.let { next -> forEachChild(node) { walk(it, next) } }
+            steps.descending?.let { next -> forEachChild(node) { walk(it, next) } }
+        }
+
+        private fun expand(node: Any, cursor: Cursor, steps: Steps) {
+            if (cursor.descending) {
+                steps.descend(cursor)
+                expand(node, Cursor(cursor.path, cursor.segment, cursor.flatten), steps)
+                return
+            }
+            val path = paths[cursor.path]
+            val i = cursor.segment
+            if (i == path.size) {
+                if (path.firstWildcard < 0) results[cursor.path] = node else addFlattened(node, cursor.flatten, sink(cursor))
+                return
+            }
+            val kind = path.kinds[i]
+            if (kind == WILDCARD && node !is List<*> && node !is Map<*, *>) return
+            if (i == path.firstWildcard) results[cursor.path] = ArrayList<Any?>()
+            val last = i + 1 == path.size
+            when (kind) {
+                NAME -> if (node is Map<*, *>) steps.lookup(path.keys[i]!!, Cursor(cursor.path, i + 1, cursor.flatten))
+                INDEX -> if (node is List<*>) steps.lookup(path.indexes[i], Cursor(cursor.path, i + 1, cursor.flatten))
+                WILDCARD ->
+                    if (last) forEachChild(node) { addFlattened(it, cursor.flatten - 1, sink(cursor)) }
+                    else steps.eachChild(Cursor(cursor.path, i + 1, cursor.flatten))
+                DESCENT ->
+                    if (last) addFlattened(node, cursor.flatten, sink(cursor))
+                    else expand(node, Cursor(cursor.path, i + 1, cursor.flatten + 1, descending = true), steps)
             }
         }
+
+        @Suppress("UNCHECKED_CAST")
+        private fun sink(cursor: Cursor) = results[cursor.path] as MutableList<Any?>
+
+        private inline fun forEachChild(node: Any, action: (Any?) -> Unit) {
+            when (node) {
+                is Map<*, *> -> for (value in node.values) action(value)
+                is List<*> -> for (item in node) action(item)
+            }
+        }
+    }
+
+    /** Cursors for the children of one node, grouped by how they reach them. */
+    private class Steps {
+        var byKey: MutableMap<Any, MutableList<Cursor>>? = null
+        var children: MutableList<Cursor>? = null
+        var descending: MutableList<Cursor>? = null
+
+        fun lookup(key: Any, cursor: Cursor) {
+            val map = byKey ?: LinkedHashMap<Any, MutableList<Cursor>>().also { byKey = it }
+            map.getOrPut(key) { ArrayList() }.add(cursor)
+        }
+
+        fun eachChild(cursor: Cursor) {
+            (children ?: ArrayList<Cursor>().also { children = it }).add(cursor)
+        }
+
+        fun descend(cursor: Cursor) {
+            (descending ?: ArrayList<Cursor>().also { descending = it }).add(cursor)
+        }
     }
 }
@@ -8,7 +8,6 @@ import io.zenwave360.zdl.antlr.ZdlListenerUtils.createCRUDMethods
 import io.zenwave360.zdl.antlr.ZdlListenerUtils.first
 import io.zenwave360.zdl.antlr.ZdlListenerUtils.getArray
 import io.zenwave360.zdl.antlr.ZdlListenerUtils.getComplexValue
-import io.zenwave360.zdl.antlr.ZdlListenerUtils.getLocations
 import io.zenwave360.zdl.antlr.ZdlListenerUtils.getOptionValue
 import io.zenwave360.zdl.antlr.ZdlListenerUtils.getText
 import io.zenwave360.zdl.antlr.ZdlListenerUtils.getValueText
@@ -18,7 +17,11 @@ import io.zenwave360.zdl.antlr.ZdlListenerUtils.lowerCamelCase
 import io.zenwave360.zdl.antlr.ZdlListenerUtils.pluralize
 import io.zenwave360.zdl.antlr.ZdlListenerUtils.snakeCase
 
-class ZdlListenerImpl : ZdlBaseListener() {
+/**
+ * Builds a [ZdlModel] while walking a parse tree. Without [withLocations] no source location is recorded,
+ * saving the location paths and arrays when only the model is needed.
+ */
+class ZdlListenerImpl(private val withLocations: Boolean = true) : ZdlBaseListener() {
 
     val model = ZdlModel()
     private val currentStack = ArrayDeque<FluentMap>()
@@ -44,6 +47,7 @@ class ZdlListenerImpl : ZdlBaseListener() {
 
     override fun enterImport_(ctx: ZdlParser.Import_Context) {
         val value = getValueText(ctx.import_value().string())
+        if (withLocations) setLocation("imports.${(model["imports"] as List<*>).size}", ctx)
         model.appendToList("imports", value)
     }
 
@@ -68,11 +72,13 @@ class ZdlListenerImpl : ZdlBaseListener() {
         )
         model.appendTo("apis", name, currentStack.last())
 
-        val apiLocation = "apis.$name"
-        model.setLocation(apiLocation, getLocations(ctx))
-        model.setLocation("$apiLocation.name", getLocations(ctx.api_name()))
-        model.setLocation("$apiLocation.type", getLocations(ctx.api_type()))
-        ctx.api_role()?.let { model.setLocation("$apiLocation.role", getLocations(it)) }
+        if (withLocations) {
+            val apiLocation = "apis.$name"
+            setLocation(apiLocation, ctx)
+            setLocation("$apiLocation.name", ctx.api_name())
+            setLocation("$apiLocation.type", ctx.api_type())
+            ctx.api_role()?.let { setLocation("$apiLocation.role", it) }
+        }
     }
 
     override fun enterApi_config(ctx: ZdlParser.Api_configContext) {
@@ -96,16 +102,18 @@ class ZdlListenerImpl : ZdlBaseListener() {
         )
         model.appendTo("plugins", name, currentStack.last())
 
-        val location = "plugins.$name"
-        model.setLocation(location, getLocations(ctx))
-        model.setLocation("$location.name", getLocations(ctx.plugin_name()))
-        model.setLocation("$location.javadoc", getLocations(ctx.javadoc()))
-        if (ctx.plugin_disabled().DISABLED() != null) {
-            model.setLocation("$location.disabled", getLocations(ctx.plugin_disabled()))
-        }
-        ctx.plugin_options()?.let { po ->
-            model.setLocation("$location.options", getLocations(po))
-            po.plugin_options_inherit()?.let { model.setLocation("$location.options.inherit", getLocations(it)) }
+        if (withLocations) {
+            val location = "plugins.$name"
+            setLocation(location, ctx)
+            setLocation("$location.name", ctx.plugin_name())
+            setLocation("$location.javadoc", ctx.javadoc())
+            if (ctx.plugin_disabled().DISABLED() != null) {
+                setLocation("$location.disabled", ctx.plugin_disabled())
+            }
+            ctx.plugin_options()?.let { po ->
+                setLocation("$location.options", po)
+                po.plugin_options_inherit()?.let { setLocation("$location.options.inherit", it) }
+            }
         }
     }
 
@@ -140,11 +148,13 @@ class ZdlListenerImpl : ZdlBaseListener() {
         model.appendTo("entities", name, currentStack.last())
         currentCollection = "entities"
 
-        val entityLocation = "$currentCollection.$name"
-        model.setLocation(entityLocation, getLocations(ctx))
-        model.setLocation("$entityLocation.name", getLocations(entity.entity_name()))
-        model.setLocation("$entityLocation.tableName", getLocations(entity.entity_table_name()))
-        model.setLocation("$entityLocation.body", getLocations(ctx.entity_body()))
+        if (withLocations) {
+            val entityLocation = "$currentCollection.$name"
+            setLocation(entityLocation, ctx)
+            setLocation("$entityLocation.name", entity.entity_name())
+            setLocation("$entityLocation.tableName", entity.entity_table_name())
+            setLocation("$entityLocation.body", ctx.entity_body())
+        }
     }
 
     override fun exitEntity(ctx: ZdlParser.EntityContext) { currentStack.removeLast() }
@@ -204,15 +214,17 @@ class ZdlListenerImpl : ZdlBaseListener() {
             .with("validations", validations)
         currentStack.last().appendTo("fields", name, field)
 
-        val entityName = currentStack.last()["name"]
-        val entityLocation = "$currentCollection.$entityName.fields.$name"
-        model.setLocation(entityLocation, getLocations(ctx))
-        model.setLocation("$entityLocation.name", getLocations(ctx.field_name()))
-        model.setLocation("$entityLocation.type", getLocations(ctx.field_type()))
-        for (fieldValidation in ctx.field_validations()) {
-            model.setLocation("$entityLocation.validations.${getText(fieldValidation.field_validation_name())}", getLocations(fieldValidation))
+        if (withLocations) {
+            val entityName = currentStack.last()["name"]
+            val entityLocation = "$currentCollection.$entityName.fields.$name"
+            setLocation(entityLocation, ctx)
+            setLocation("$entityLocation.name", ctx.field_name())
+            setLocation("$entityLocation.type", ctx.field_type())
+            for (fieldValidation in ctx.field_validations()) {
+                setLocation("$entityLocation.validations.${getText(fieldValidation.field_validation_name())}", fieldValidation)
+            }
+            setLocation("$entityLocation.javadoc", first(ctx.javadoc(), ctx.suffix_javadoc()))
         }
-        model.setLocation("$entityLocation.javadoc", getLocations(first(ctx.javadoc(), ctx.suffix_javadoc())))
 
         currentStack.addLast(field)
     }
@@ -255,18 +267,25 @@ class ZdlListenerImpl : ZdlBaseListener() {
         }
         model.appendTo(currentCollection!!, entityName, currentStack.last())
 
-        val entityLocation = "$currentCollection.$entityName"
-        val startLocation = getLocations(parent.field_type())
-        val endLocation = getLocations(ctx)
-        model.setLocation(entityLocation, mergeLocations(startLocation, endLocation))
-        model.setLocation("$entityLocation.name", getLocations(parent.field_type()))
-        model.setLocation("$entityLocation.tableName", getLocations(parent.entity_table_name()))
-        model.setLocation("$entityLocation.body", getLocations(ctx))
+        if (withLocations) {
+            val entityLocation = "$currentCollection.$entityName"
+            setLocation(entityLocation, parent.field_type(), ctx)
+            setLocation("$entityLocation.name", parent.field_type())
+            setLocation("$entityLocation.tableName", parent.entity_table_name())
+            setLocation("$entityLocation.body", ctx)
+        }
     }
 
-    private fun mergeLocations(startLocation: IntArray?, endLocation: IntArray?): IntArray? {
-        if (startLocation == null || endLocation == null) return null
-        return intArrayOf(startLocation[0], endLocation[1], startLocation[2], startLocation[3], endLocation[4], endLocation[5])
+    /** Records the location of [ctx] by token offsets, its lines and characters are only worked out when read. */
+    private fun setLocation(location: String, ctx: ParserRuleContext?) = setLocation(location, ctx, ctx)
+
+    /** The location from the start of [from] to the end of [to], as [ZdlListenerUtils.getLocations] computes it. */
+    private fun setLocation(location: String, from: ParserRuleContext?, to: ParserRuleContext?) {
+        val start = from?.start ?: return
+        val stop = to?.stop ?: return
+        // a single token ends after its text, longer rules at the start of their last token
+        val stopLength = if (to.start === stop) stop.stopIndex + 1 - stop.startIndex else 0
+        model.locations.capture(location, start, stop, stopLength)
     }
 
     private fun processNestedFieldValidations(field_validations: List<ZdlParser.Nested_field_validationsContext>?): Map<String, Any?> {
@@ -292,10 +311,12 @@ class ZdlListenerImpl : ZdlBaseListener() {
             .with("comment", jd))
         model.appendTo("enums", name, currentStack.last())
 
-        val entityLocation = "enums.$name"
-        model.setLocation(entityLocation, getLocations(ctx))
-        model.setLocation("$entityLocation.name", getLocations(ctx.enum_name()))
-        model.setLocation("$entityLocation.body", getLocations(ctx.enum_body()))
+        if (withLocations) {
+            val entityLocation = "enums.$name"
+            setLocation(entityLocation, ctx)
+            setLocation("$entityLocation.name", ctx.enum_name())
+            setLocation("$entityLocation.body", ctx.enum_body())
+        }
     }
 
     override fun exitEnum(ctx: ZdlParser.EnumContext) { currentStack.removeLast() }
@@ -315,6 +336,15 @@ class ZdlListenerImpl : ZdlBaseListener() {
         )
     }
 
+    override fun enterRelationships(ctx: ZdlParser.RelationshipsContext) {
+        if (!withLocations) return
+        val location = "relationships.${ctx.relationship_type().text}"
+        // several blocks can share the same relationship type, keep the first one
+        if (!model.getLocations().containsKey(location)) {
+            setLocation(location, ctx)
+        }
+    }
+
     override fun enterRelationship(ctx: ZdlParser.RelationshipContext) {
         val parent = ctx.getParent() as ZdlParser.RelationshipsContext
         val relationshipType = parent.relationship_type().text
@@ -322,7 +352,7 @@ class ZdlListenerImpl : ZdlBaseListener() {
 
         val relationship = FluentMap.build().with("type", relationshipType).with("name", relationshipName)
         val location = "relationships.$relationshipName"
-        model.setLocation(location, getLocations(ctx))
+        if (withLocations) setLocation(location, ctx)
 
         if (ctx.relationship_from() != null && ctx.relationship_from().relationship_definition() != null) {
             val from = getText(ctx.relationship_from().relationship_definition().relationship_entity_name())
@@ -332,12 +362,14 @@ class ZdlListenerImpl : ZdlBaseListener() {
             val isInjectedFieldInFromRequired = isRequired(ctx.relationship_from().relationship_definition())
             val injectedFieldInFromDescription = getText(ctx.relationship_from().relationship_definition().relationship_description_field())
             val relationshipValidations = relationshipValidations(ctx.relationship_from().relationship_definition())
-            model.setLocation("$location.from.entity", getLocations(ctx.relationship_from().relationship_definition().relationship_entity_name()))
-            model.setLocation("$location.from.field", getLocations(ctx.relationship_from().relationship_definition().relationship_field_name()))
-            ctx.relationship_from().relationship_definition().relationship_field_validations()?.let { rf ->
-                model.setLocation("$location.from.validations", getLocations(rf))
-                rf.relationship_field_min()?.let { model.setLocation("$location.from.validations.min", getLocations(it)) }
-                rf.relationship_field_max()?.let { model.setLocation("$location.from.validations.max", getLocations(it)) }
+            if (withLocations) {
+                setLocation("$location.from.entity", ctx.relationship_from().relationship_definition().relationship_entity_name())
+                setLocation("$location.from.field", ctx.relationship_from().relationship_definition().relationship_field_name())
+                ctx.relationship_from().relationship_definition().relationship_field_validations()?.let { rf ->
+                    setLocation("$location.from.validations", rf)
+                    rf.relationship_field_min()?.let { setLocation("$location.from.validations.min", it) }
+                    rf.relationship_field_max()?.let { setLocation("$location.from.validations.max", it) }
+                }
             }
             relationship.with("from", from)
                 .with("commentInFrom", commentInFrom)
@@ -356,12 +388,14 @@ class ZdlListenerImpl : ZdlBaseListener() {
             val isInjectedFieldInToRequired = isRequired(ctx.relationship_to().relationship_definition())
             val injectedFieldInToDescription = getText(ctx.relationship_to().relationship_definition().relationship_description_field())
             val relationshipValidations = relationshipValidations(ctx.relationship_to().relationship_definition())
-            model.setLocation("$location.to.entity", getLocations(ctx.relationship_to().relationship_definition().relationship_entity_name()))
-            model.setLocation("$location.to.field", getLocations(ctx.relationship_to().relationship_definition().relationship_field_name()))
-            ctx.relationship_to().relationship_definition().relationship_field_validations()?.let { rf ->
-                model.setLocation("$location.to.validations", getLocations(rf))
-                rf.relationship_field_min()?.let { model.setLocation("$location.to.validations.min", getLocations(it)) }
-                rf.relationship_field_max()?.let { model.setLocation("$location.to.validations.max", getLocations(it)) }
+            if (withLocations) {
+                setLocation("$location.to.entity", ctx.relationship_to().relationship_definition().relationship_entity_name())
+                setLocation("$location.to.field", ctx.relationship_to().relationship_definition().relationship_field_name())
+                ctx.relationship_to().relationship_definition().relationship_field_validations()?.let { rf ->
+                    setLocation("$location.to.validations", rf)
+                    rf.relationship_field_min()?.let { setLocation("$location.to.validations.min", it) }
+                    rf.relationship_field_max()?.let { setLocation("$location.to.validations.max", it) }
+                }
             }
             relationship.with("to", to)
                 .with("commentInTo", commentInTo)
@@ -456,11 +490,13 @@ class ZdlListenerImpl : ZdlBaseListener() {
         )
         model.appendTo("aggregates", aggregateName, currentStack.last())
 
-        val name = currentStack.last()["name"]
-        val location = "aggregates.$name"
-        model.setLocation(location, getLocations(ctx))
-        model.setLocation("$location.name", getLocations(ctx.aggregate_name()))
-        model.setLocation("$location.aggregateRoot", getLocations(ctx.aggregate_root()))
+        if (withLocations) {
+            val name = currentStack.last()["name"]
+            val location = "aggregates.$name"
+            setLocation(location, ctx)
+            setLocation("$location.name", ctx.aggregate_name())
+            setLocation("$location.aggregateRoot", ctx.aggregate_root())
+        }
     }
 
     override fun exitAggregate(ctx: ZdlParser.AggregateContext) { currentStack.removeLast() }
@@ -468,7 +504,7 @@ class ZdlListenerImpl : ZdlBaseListener() {
     override fun enterAggregate_command(ctx: ZdlParser.Aggregate_commandContext) {
         val aggregateName = getText((ctx.getParent() as ZdlParser.AggregateContext).aggregate_name())!!
         val commandName = getText(ctx.aggregate_command_name())!!
-        val location = "aggregates.$aggregateName.commands.$commandName"
+        val location = if (withLocations) "aggregates.$aggregateName.commands.$commandName" else null
         val parameter = ctx.aggregate_command_parameter()?.ID()?.text
         val withEvents = getServiceMethodEvents(location, ctx.with_events())
         val jd = javadoc(first(ctx.javadoc(), ctx.suffix_javadoc()))
@@ -482,9 +518,11 @@ class ZdlListenerImpl : ZdlBaseListener() {
         currentStack.last().appendTo("commands", commandName, method)
         currentStack.addLast(method)
 
-        model.setLocation(location, getLocations(ctx))
-        model.setLocation("$location.name", getLocations(ctx.aggregate_command_name()))
-        model.setLocation("$location.parameter", getLocations(ctx.aggregate_command_parameter()))
+        if (location != null) {
+            setLocation(location, ctx)
+            setLocation("$location.name", ctx.aggregate_command_name())
+            setLocation("$location.parameter", ctx.aggregate_command_parameter())
+        }
     }
 
     override fun exitAggregate_command(ctx: ZdlParser.Aggregate_commandContext) { currentStack.removeLast() }
@@ -502,11 +540,13 @@ class ZdlListenerImpl : ZdlBaseListener() {
         )
         model.appendTo("services", serviceName, currentStack.last())
 
-        val name = currentStack.last()["name"]
-        val location = "services.$name"
-        model.setLocation(location, getLocations(ctx))
-        model.setLocation("$location.name", getLocations(ctx.service_name()))
-        model.setLocation("$location.aggregates", getLocations(ctx.service_aggregates()))
+        if (withLocations) {
+            val name = currentStack.last()["name"]
+            val location = "services.$name"
+            setLocation(location, ctx)
+            setLocation("$location.name", ctx.service_name())
+            setLocation("$location.aggregates", ctx.service_aggregates())
+        }
     }
 
     override fun exitService(ctx: ZdlParser.ServiceContext) { currentStack.removeLast() }
@@ -514,7 +554,7 @@ class ZdlListenerImpl : ZdlBaseListener() {
     override fun enterService_method(ctx: ZdlParser.Service_methodContext) {
         val serviceName = getText((ctx.getParent() as ZdlParser.ServiceContext).service_name())!!
         val methodName = getText(ctx.service_method_name())!!
-        val location = "services.$serviceName.methods.$methodName"
+        val location = if (withLocations) "services.$serviceName.methods.$methodName" else null
         val naturalId = if (ctx.service_method_parameter_natural() != null) true else null
         val methodParamId = if (ctx.service_method_parameter_id() != null) "id" else null
         val methodParameter = ctx.service_method_parameter()?.text
@@ -538,30 +578,37 @@ class ZdlListenerImpl : ZdlBaseListener() {
         currentStack.last().appendTo("methods", methodName, method)
         currentStack.addLast(method)
 
-        model.setLocation(location, getLocations(ctx))
-        model.setLocation("$location.name", getLocations(ctx.service_method_name()))
-        model.setLocation("$location.parameter", getLocations(ctx.service_method_parameter()))
-        model.setLocation("$location.returnType", getLocations(ctx.service_method_return()))
+        if (location != null) {
+            setLocation(location, ctx)
+            setLocation("$location.name", ctx.service_method_name())
+            setLocation("$location.parameter", ctx.service_method_parameter())
+            setLocation("$location.returnType", ctx.service_method_return())
+        }
     }
 
     override fun exitService_method(ctx: ZdlParser.Service_methodContext) { currentStack.removeLast() }
 
-    private fun getServiceMethodEvents(location: String, ctx: ZdlParser.With_eventsContext?): List<Any> {
-        model.setLocation("$location.withEvents", getLocations(ctx))
+    /** The events of a method or command, with their locations under [location] unless it is null. */
+    private fun getServiceMethodEvents(location: String?, ctx: ZdlParser.With_eventsContext?): List<Any> {
+        if (location != null) setLocation("$location.withEvents", ctx)
         val events = mutableListOf<Any>()
         ctx?.with_events_events()?.forEachIndexed { i, event ->
             event.with_events_event()?.let { e ->
                 val eventName = getText(e)!!
                 events.add(eventName)
-                model.setLocation("$location.withEvents.$i", getLocations(e))
-                model.setLocation("$location.withEvents.$eventName", getLocations(e))
+                if (location != null) {
+                    setLocation("$location.withEvents.$i", e)
+                    setLocation("$location.withEvents.$eventName", e)
+                }
             }
             event.with_events_events_or()?.let { ors ->
                 val orEvents = ors.with_events_event().map { it.text }
                 events.add(orEvents)
-                ors.with_events_event().forEachIndexed { j, eventContext ->
-                    model.setLocation("$location.withEvents.$i.$j", getLocations(eventContext))
-                    model.setLocation("$location.withEvents.${getText(eventContext)}", getLocations(eventContext))
+                if (location != null) {
+                    ors.with_events_event().forEachIndexed { j, eventContext ->
+                        setLocation("$location.withEvents.$i.$j", eventContext)
+                        setLocation("$location.withEvents.${getText(eventContext)}", eventContext)
+                    }
                 }
             }
         }
@@ -582,6 +629,12 @@ class ZdlListenerImpl : ZdlBaseListener() {
         )
         model.appendTo("events", name, currentStack.last())
         currentCollection = "events"
+
+        if (withLocations) {
+            val location = "events.$name"
+            setLocation(location, ctx)
+            setLocation("$location.name", ctx.event_name())
+        }
     }
 
     override fun exitEvent(ctx: ZdlParser.EventContext) { currentStack.removeLast() }
@@ -592,6 +645,12 @@ class ZdlListenerImpl : ZdlBaseListener() {
         currentStack.addLast(processEntity(name, jd, null).with("type", "inputs"))
         model.appendTo("inputs", name, currentStack.last())
         currentCollection = "inputs"
+
+        if (withLocations) {
+            val location = "inputs.$name"
+            setLocation(location, ctx)
+            setLocation("$location.name", ctx.input_name())
+        }
     }
 
     override fun exitInput(ctx: ZdlParser.InputContext) { currentStack.removeLast() }
@@ -602,6 +661,12 @@ class ZdlListenerImpl : ZdlBaseListener() {
         currentStack.addLast(processEntity(name, jd, null).with("type", "outputs"))
         model.appendTo("outputs", name, currentStack.last())
         currentCollection = "outputs"
+
+        if (withLocations) {
+            val location = "outputs.$name"
+            setLocation(location, ctx)
+            setLocation("$location.name", ctx.output_name())
+        }
     }
 
     override fun exitOutput(ctx: ZdlParser.OutputContext) { currentStack.removeLast() }
@@ -0,0 +1,122 @@
+package io.zenwave360.zdl.antlr
+
+/**
+ * Finds the smallest location containing a source position with a binary search, for [ZdlModel.getLocation].
+ *
+ * Locations do not always nest: the line/character end of an element spanning several tokens is the start of its
+ * last token, so that token's own location ends after it. Instead of a tree of nested ranges the index keeps the
+ * boundaries of all ranges, sorted, with the smallest location containing each segment between two boundaries
+ * precomputed by a sweep. Ties between ranges of the same size go to the first location, as a linear scan would.
+ */
+internal class ZdlLocationIndex private constructor(
+    /** [ZdlLocations.version] indexed, to tell when the locations changed. */
+    val version: Int,
+    private val boundaries: LongArray,
+    private val smallest: Array<String?>,
+) {
+
+    fun find(position: Long): String? {
+        var low = 0
+        var high = boundaries.size - 1
+        var found = -1
+        while (low <= high) {
+            val mid = (low + high) ushr 1
+            if (boundaries[mid] <= position) {
+                found = mid
+                low = mid + 1
+            } else {
+                high = mid - 1
+            }
+        }
+        return if (found < 0) null else smallest[found]
+    }
+
+    companion object {
+
+        fun position(line: Int, character: Int): Long = (line.toLong() shl 32) or (character.toLong() and 0xffffffffL)
+
+        /** Ranges of source offsets, end exclusive. */
+        fun byOffset(locations: ZdlLocations): ZdlLocationIndex = build(
+            locations,
+            { locations.get(it, ZdlLocations.START_OFFSET).toLong() },
+            { locations.get(it, ZdlLocations.END_OFFSET).toLong() },
+        )
+
+        /** Ranges of line and character positions, end inclusive. */
+        fun byLineAndCharacter(locations: ZdlLocations): ZdlLocationIndex = build(
+            locations,
+            { position(locations.get(it, ZdlLocations.START_LINE), locations.get(it, ZdlLocations.START_CHARACTER)) },
+            { position(locations.get(it, ZdlLocations.END_LINE), locations.get(it, ZdlLocations.END_CHARACTER)) + 1 },
+        )
+
+        private fun build(locations: ZdlLocations, start: (Int) -> Long, end: (Int) -> Long): ZdlLocationIndex {
+            val count = locations.size
+            val starts = LongArray(count) { start(it) }
+            val ends = LongArray(count) { end(it) }
+            val widths = IntArray(count) { locations.get(it, ZdlLocations.END_OFFSET) - locations.get(it, ZdlLocations.START_OFFSET) }
+            val byStart = (0 until count).filter { starts[it] < ends[it] }.sortedBy { starts[it] }
+            val points = LongArray(byStart.size * 2)
+            byStart.forEachIndexed { i, location ->
+                points[2 * i] = starts[location]
+                points[2 * i + 1] = ends[location]
+            }
+            points.sort()
+            val boundaries = distinct(points)
+
+            val smallest = arrayOfNulls<String>(boundaries.size)
+            val open = Heap(count) { a, b -> if (widths[a] != widths[b]) widths[a] - widths[b] else a - b }
+            var next = 0
+            for ((i, boundary) in boundaries.withIndex()) {
+                while (next < byStart.size && starts[byStart[next]] == boundary) open.add(byStart[next++])
+                while (!open.isEmpty() && ends[open.peek()] <= boundary) open.poll()
+                smallest[i] = if (open.isEmpty()) null else locations.key(open.peek())
+            }
+            return ZdlLocationIndex(locations.version, boundaries, smallest)
+        }
+
+        private fun distinct(sorted: LongArray): LongArray {
+            var size = 0
+            for (i in sorted.indices) {
+                if (i == 0 || sorted[i] != sorted[i - 1]) sorted[size++] = sorted[i]
+            }
+            return sorted.copyOf(size)
+        }
+    }
+
+    /** Binary min-heap of location indexes. */
+    private class Heap(capacity: Int, private val compare: (Int, Int) -> Int) {
+        private val items = IntArray(capacity)
+        private var size = 0
+
+        fun isEmpty() = size == 0
+
+        fun peek(): Int = items[0]
+
+        fun add(item: Int) {
+            var i = size++
+            while (i > 0) {
+                val parent = (i - 1) / 2
+                if (compare(items[parent], item) <= 0) break
+                items[i] = items[parent]
+                i = parent
+            }
+            items[i] = item
+        }
+
+        fun poll(): Int {
+            val top = items[0]
+            val last = items[--size]
+            var i = 0
+            while (true) {
+                var child = 2 * i + 1
+                if (child >= size) break
+                if (child + 1 < size && compare(items[child + 1], items[child]) < 0) child++
+                if (compare(last, items[child]) <= 0) break
+                items[i] = items[child]
+                i = child
+            }
+            items[i] = last
+            return top
+        }
+    }
+}
@@ -0,0 +1,314 @@
+package io.zenwave360.zdl.antlr
+
+import org.antlr.v4.kotlinruntime.Token
+
+/**
+ * Source locations of the elements of a [ZdlModel], by path: `entities.Customer.fields.name.type`...
+ *
+ * A location is six ints (start and end offset, start line and character, end line and character) and a model has
+ * several per field, so instead of an `IntArray` per location they are kept in one growable `IntArray` of
+ * [WIDTH] ints per location, with the paths in a key table giving each location its index.
+ * [ZdlModel.getLocations] is a map view of these, which only creates the arrays it is asked for. Removed locations
+ * leave a gap in the key table, closed the next time locations are read or set by index.
+ *
+ * The parser [capture]s locations as source offsets only, noting the start offset of the lines their tokens are on.
+ * Their lines and characters are resolved together, from that table of line starts, the first time any of them is
+ * read, so the source itself is never kept. Resolution runs once even when several threads read a model first at
+ * the same time, as models shared through a [io.zenwave360.zdl.ZdlParseCache] may be.
+ */
+class ZdlLocations internal constructor() {
+
+    companion object {
+        const val START_OFFSET = 0
+        const val END_OFFSET = 1
+        const val START_LINE = 2
+        const val START_CHARACTER = 3
+        const val END_LINE = 4
+        const val END_CHARACTER = 5
+        const val WIDTH = 6
+
+        /** [START_LINE] of a captured location, whose stop token is in [stops] until resolved. */
+        private const val UNRESOLVED = -1
+    }
+
+    /** Key of each location, null for the [removed] ones until [compact]ed. */
+    private val paths = ArrayList<String?>()
+    private val indexes = HashMap<String, Int>()
+    private var columns = IntArray(16 * WIDTH)
+    private var removed = 0
+
+    /** Changes on every [set] and [remove], for indexes built on these locations. */
+    internal var version = 0
+        private set
+
+    internal val map = LocationMap()
+
+    /** Offset and length of the stop token of each captured location, two ints per location, until resolved. */
+    private var stops = IntArray(0)
+
+    /** Start offset of each line a captured token is on, by line from 0, -1 for the others, until resolved. */
+    private var lineStarts = IntArray(0)
+
+    /** Resolves the captured locations once, publishing the resolved columns to every reader. */
+    private var resolution: Lazy<Unit>? = null
+
+    val size: Int get() = paths.size - removed
+
+    operator fun contains(key: String): Boolean = indexes.containsKey(key)
+
+    /** Index of the location of [key], in insertion order, or -1. */
+    fun indexOf(key: String): Int {
+        compact()
+        return indexes[key] ?: -1
+    }
+
+    fun key(index: Int): String {
+        compact()
+        return paths[index]!!
+    }
+
+    /** The [component] of the location at [index], [START_OFFSET] to [END_CHARACTER]. */
+    fun get(index: Int, component: Int): Int {
+        compact()
+        if (component != START_OFFSET && component != END_OFFSET) resolve()
+        return columns[index * WIDTH + component]
+    }
+
+    /** A copy of the location of [key]. */
+    operator fun get(key: String): IntArray? {
+        val index = indexes[key] ?: return null
+        resolve()
+        return columns.copyOfRange(index * WIDTH, index * WIDTH + WIDTH)
+    }
+
+    fun position(index: Int): IntArray {
+        compact()
+        resolve()
+        return columns.copyOfRange(index * WIDTH, index * WIDTH + WIDTH)
+    }
+
+    /** Removes the location of [key], returning whether it had one. Later locations move down one index. */
+    fun remove(key: String): Boolean {
+        val index = indexes.remove(key) ?: return false
+        paths[index] = null
+        removed++
+        version++
+        return true
+    }
+
+    fun clear() {
+        paths.clear()
+        indexes.clear()
+        removed = 0
+        stops = IntArray(0)
+        lineStarts = IntArray(0)
+        version++
+    }
+
+    /** Sets the location of [key], keeping its index when it already had one. */
+    fun set(key: String, startOffset: Int, endOffset: Int, startLine: Int, startCharacter: Int, endLine: Int, endCharacter: Int) {
+        val offset = slot(key)
+        columns[offset + START_OFFSET] = startOffset
+        columns[offset + END_OFFSET] = endOffset
+        columns[offset + START_LINE] = startLine
+        columns[offset + START_CHARACTER] = startCharacter
+        columns[offset + END_LINE] = endLine
+        columns[offset + END_CHARACTER] = endCharacter
+        version++
+    }
+
+    fun set(key: String, position: IntArray) {
+        require(position.size == WIDTH) { "A location has $WIDTH positions: ${position.contentToString()}" }
+        set(key, position[0], position[1], position[2], position[3], position[4], position[5])
+    }
+
+    /**
+     * Sets the location of [key] from the [start] token to the [stop] token, leaving its lines and characters to be
+     * resolved when read. It ends on the line of [stop], [stopLength] characters after its start: longer elements end
+     * at the start of their last token, elements made of a single token after it. Locations captured before a read
+     * all come from the same source.
+     */
+    internal fun capture(key: String, start: Token, stop: Token, stopLength: Int) {
+        if (resolution?.isInitialized() != false) resolution = lazy { resolveCaptured() }
+        val offset = slot(key)
+        columns[offset + START_OFFSET] = start.startIndex
+        columns[offset + END_OFFSET] = stop.stopIndex + 1
+        columns[offset + START_LINE] = UNRESOLVED
+        val index = offset / WIDTH * 2
+        if (stops.size < index + 2) stops = stops.copyOf(maxOf(index + 2, stops.size * 2, 32))
+        stops[index] = stop.startIndex
+        stops[index + 1] = stopLength
+        lineStart(start)
+        lineStart(stop)
+        version++
+    }
+
+    /** Notes where the line of [token] starts, from its offset and its position in the line. */
+    private fun lineStart(token: Token) {
+        val line = token.line - 1
+        if (line < 0) return
+        if (lineStarts.size <= line) {
+            val size = lineStarts.size
+            lineStarts = lineStarts.copyOf(maxOf(line + 1, size * 2, 64))
+            lineStarts.fill(-1, size)
+        }
+        lineStarts[line] = token.startIndex - token.charPositionInLine
+    }
+
+    /** Offset in [columns] of the location of [key], adding it when new. */
+    private fun slot(key: String): Int {
+        var index = indexes[key]
+        if (index == null) {
+            compact()
+            index = paths.size
+            paths.add(key)
+            indexes[key] = index
+            if (columns.size < paths.size * WIDTH) columns = columns.copyOf(columns.size * 2)
+        }
+        return index * WIDTH
+    }
+
+    private fun resolve() {
+        resolution?.value
+    }
+
+    /** Closes the gaps [remove] left, moving the later locations down. */
+    private fun compact() {
+        if (removed == 0) return
+        // pending captures move along with their stops
+        val pending = stops.size > 0
+        var to = 0
+        for (from in 0 until paths.size) {
+            val key = paths[from] ?: continue
+            if (from != to) {
+                paths[to] = key
+                indexes[key] = to
+                columns.copyInto(columns, to * WIDTH, from * WIDTH, from * WIDTH + WIDTH)
+                if (pending && from * 2 + 2 <= stops.size) stops.copyInto(stops, to * 2, from * 2, from * 2 + 2)
+            }
+            to++
+        }
+        while (paths.size > to) paths.removeAt(paths.size - 1)
+        removed = 0
+    }
+
+    /** Resolves the lines and characters of all captured locations from the line starts their tokens noted. */
+    private fun resolveCaptured() {
+        val lines = ZdlLineTable.of(lineStarts)
+        for (index in 0 until paths.size) {
+            val offset = index * WIDTH
+            if (paths[index] == null || columns[offset + START_LINE] != UNRESOLVED) continue
+            val start = columns[offset + START_OFFSET]
+            val stop = stops[index * 2]
+            columns[offset + START_LINE] = lines.line(start)
+            columns[offset + START_CHARACTER] = lines.character(start)
+            columns[offset + END_LINE] = lines.line(stop)
+            columns[offset + END_CHARACTER] = lines.character(stop) + stops[index * 2 + 1]
+        }
+        stops = IntArray(0)
+        lineStarts = IntArray(0)
+    }
+
+    /**
+     * The locations as a map of `IntArray`s, each a new copy of its location, so reading the map never writes to it.
+     * Locations are set and removed through the map, its [entries] and their iterator.
+     */
+    internal inner class LocationMap : AbstractMutableMap<String, Any?>() {
+
+        override val size: Int get() = this@ZdlLocations.size
+
+        override fun containsKey(key: String): Boolean = indexes.containsKey(key)
+
+        override fun get(key: String): Any? = this@ZdlLocations[key]
+
+        override fun put(key: String, value: Any?): Any? {
+            val previous = this@ZdlLocations[key]
+            this@ZdlLocations.set(key, value as IntArray)
+            return previous
+        }
+
+        override fun remove(key: String): Any? {
+            val previous = this@ZdlLocations[key]
+            this@ZdlLocations.remove(key)
+            return previous
+        }
+
+        override fun clear() = this@ZdlLocations.clear()
+
+        override val entries: MutableSet<MutableMap.MutableEntry<String, Any?>> = object : AbstractMutableSet<MutableMap.MutableEntry<String, Any?>>() {
+            override val size: Int get() = this@ZdlLocations.size
+
+            override fun add(element: MutableMap.MutableEntry<String, Any?>): Boolean {
+                val previous = put(element.key, element.value) as IntArray?
+                return previous == null || !previous.contentEquals(element.value as IntArray)
+            }
+
+            override fun clear() = this@ZdlLocations.clear()
+
+            // walks the key table as it is, removals leaving gaps behind rather than moving the locations ahead
+            override fun iterator(): MutableIterator<MutableMap.MutableEntry<String, Any?>> = object : MutableIterator<MutableMap.MutableEntry<String, Any?>> {
+                private var index = 0
+                private var last: String? = null
+                override fun hasNext(): Boolean {
+                    while (index < paths.size && paths[index] == null) index++
+                    return index < paths.size
+                }
+                override fun next(): MutableMap.MutableEntry<String, Any?> {
+                    if (!hasNext()) throw NoSuchElementException()
+                    val key = paths[index++]!!
+                    last = key
+                    return Entry(key)
+                }
+                override fun remove() {
+                    val key = checkNotNull(last) { "next() has not been called, or remove() was already called" }
+                    this@ZdlLocations.remove(key)
+                    last = null
+                }
+            }
+        }
+
+        /** Reads and writes the location of [key]. */
+        private inner class Entry(override val key: String) : MutableMap.MutableEntry<String, Any?> {
+            override val value: Any? get() = get(key)
+            override fun setValue(newValue: Any?): Any? = put(key, newValue)
+            override fun equals(other: Any?): Boolean = other is Map.Entry<*, *> && key == other.key && value == other.value
+            override fun hashCode(): Int = key.hashCode() xor value.hashCode()
+            override fun toString(): String = "$key=${(value as IntArray).contentToString()}"
+        }
+    }
+}
+
+/** Start offsets of the lines of a source, in code points like token offsets, to turn offsets into lines and characters. */
+internal class ZdlLineTable private constructor(private val starts: IntArray) {
+
+    /** Line of the code point at [offset], starting at 1 like token lines. */
+    fun line(offset: Int): Int {
+        var low = 0
+        var high = starts.size - 1
+        while (low < high) {
+            val mid = (low + high + 1) ushr 1
+            if (starts[mid] <= offset) low = mid else high = mid - 1
+        }
+        return low + 1
+    }
+
+    /** Position of the code point at [offset] in its line, starting at 0 like token characters. */
+    fun character(offset: Int): Int = offset - starts[line(offset) - 1]
+
+    companion object {
+        /**
+         * The table of [starts], the start offset of each line or -1 when not known. Only offsets on known lines can
+         * be looked up: an unknown line takes the start of the next known one, so lookups skip it.
+         */
+        fun of(starts: IntArray): ZdlLineTable {
+            var count = starts.size
+            while (count > 1 && starts[count - 1] < 0) count--
+            val table = starts.copyOf(maxOf(count, 1))
+            var next = if (table[table.size - 1] < 0) 0 else table[table.size - 1]
+            for (line in table.size - 1 downTo 0) {
+                if (table[line] < 0) table[line] = next else next = table[line]
+            }
+            return ZdlLineTable(table)
+        }
+    }
+}
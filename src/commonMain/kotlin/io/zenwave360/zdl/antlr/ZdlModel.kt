@@ -2,6 +2,33 @@ package io.zenwave360.zdl.antlr
 
 class ZdlModel(private val delegate: FluentMap = FluentMap.build()) : MutableMap<String, Any?> by delegate {
 
+    /** Source text this model was parsed from, when the parser keeps it, see [io.zenwave360.zdl.ZdlParser.withKeepSource]. */
+    var source: String? = null
+
+    /** Source file of each location, for models merged from several files. */
+    internal val locationFiles: MutableMap<String, String> = mutableMapOf()
+
+    /** Left by [ZdlModelValidator] for validating the next version of this model incrementally. */
+    internal var validationState: ValidationState? = null
+
+    /** Locations of the model elements, see [getLocations] for them as a map. */
+    val locations = ZdlLocations()
+
+    /**
+     * Changes on every [changed] call, so what is built once from the model nodes, like a [ZdlTypedModel], is built
+     * again. Nodes are plain maps, so changes made to them are only seen through [changed].
+     */
+    var version = 0
+        private set
+
+    /** Tells views built from the model nodes, like [ZdlTypedModel], that they changed. */
+    fun changed() {
+        version++
+    }
+
+    private var lineIndex: ZdlLocationIndex? = null
+    private var offsetIndex: ZdlLocationIndex? = null
+
     init {
         // Initialize top-level structure
         delegate.putEntry("imports", mutableListOf<Any?>())
@@ -15,7 +42,7 @@ class ZdlModel(private val delegate: FluentMap = FluentMap.build()) : MutableMap
         delegate.putEntry("inputs", FluentMap.build())
         delegate.putEntry("outputs", FluentMap.build())
         delegate.putEntry("events", FluentMap.build())
-        delegate.putEntry("locations", FluentMap.build())
+        delegate.putEntry("locations", FluentMap.wrap(locations.map))
         delegate.putEntry("problems", mutableListOf<Any?>())
     }
 
@@ -40,47 +67,37 @@ class ZdlModel(private val delegate: FluentMap = FluentMap.build()) : MutableMap
 
     fun setLocation(location: String, positions: IntArray?): ZdlModel {
         if (positions == null || positions.size != 6) return this
-        return appendTo("locations", location, positions)
+        locations.set(location, positions)
+        return this
     }
 
-    fun clearProblems() = getProblems().clear()
+    /** Adds the problems of this model, see [ZdlProblemCollector] for its limits. */
+    val problemCollector = ZdlProblemCollector(this)
+
+    fun clearProblems() = problemCollector.clear()
 
     fun addProblem(path: String, value: String?, error: String) {
-        val p = problem(path, value, error)
-        @Suppress("UNCHECKED_CAST")
-        (delegate["problems"] as MutableList<Any?>).add(p)
+        problemCollector.add(path, value, error)
     }
 
-    private fun problem(path: String, value: String?, error: String): Map<String, Any?> {
-        val location = getLocation(path)
-        val message = error.replace("%s", value ?: "")
-        return mapOf(
-            "path" to path,
-            "location" to location,
-            "value" to value,
-            "message" to message
-        )
-    }
+    /** Source file of the element at [path], when this model was merged from several files. */
+    fun getLocationFile(path: String): String? = locationFiles[path]
 
-    private fun getLocation(path: String): IntArray? {
-        @Suppress("UNCHECKED_CAST")
-        return JSONPath.get(this, "$.locations.['$path']") as? IntArray
+    /**
+     * Path of the smallest element whose location contains [line] and [character], both inclusive at the end.
+     * Looked up in an index built on the first call, and again after locations change.
+     */
+    fun getLocation(line: Int, character: Int): String? {
+        val index = lineIndex?.takeIf { it.version == locations.version }
+            ?: ZdlLocationIndex.byLineAndCharacter(locations).also { lineIndex = it }
+        return index.find(ZdlLocationIndex.position(line, character))
     }
 
-    fun getLocation(line: Int, character: Int): String? {
-        val entries = getLocations().entries.filter { (_, value) ->
-            val position = value as IntArray
-            val lineStart = position[2]
-            val characterStart = position[3]
-            val lineEnd = position[4]
-            val characterEnd = position[5]
-            lineStart <= line && line <= lineEnd && (line != lineStart || characterStart <= character) && (line != lineEnd || character <= characterEnd)
-        }
-        val location = entries.minByOrNull { (_, v) ->
-            val pos = v as IntArray
-            pos[1] - pos[0]
-        }?.key
-        return location
+    /** Path of the smallest element whose location contains the character at [offset] of the source. */
+    fun getLocationAtOffset(offset: Int): String? {
+        val index = offsetIndex?.takeIf { it.version == locations.version }
+            ?: ZdlLocationIndex.byOffset(locations).also { offsetIndex = it }
+        return index.find(offset.toLong())
     }
 }
 
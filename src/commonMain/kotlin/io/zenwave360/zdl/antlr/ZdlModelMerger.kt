@@ -0,0 +1,104 @@
+package io.zenwave360.zdl.antlr
+
+/**
+ * Merges models parsed from separate files into one, as if the files had been concatenated in the given order:
+ * named definitions from later files replace earlier ones with the same name, lists are appended.
+ * Each location keeps the file it comes from, see [ZdlModel.getLocationFile]. Replaced definitions are returned as
+ * [Duplicate]s, and their locations are dropped along with them.
+ *
+ * Merged values are copied, the given models are neither modified nor shared with the result.
+ */
+internal class ZdlModelMerger {
+
+    /** The definition at [path] (`entities.Customer`) in [file], replaced by the one in [replacedBy]. */
+    class Duplicate(val path: String, val name: String, val file: String, val replacedBy: String)
+
+    class Merged(val model: ZdlModel, val duplicates: List<Duplicate>)
+
+    companion object {
+        private val NOT_MERGED = setOf("locations", "problems", "allEntitiesAndEnums")
+
+        /** Sections holding definitions by name, relationships being grouped by type first. */
+        private val DEFINITIONS = listOf("apis", "aggregates", "entities", "enums", "services", "inputs", "outputs", "events")
+
+        fun merge(models: List<Pair<String, ZdlModel>>): Merged {
+            // file each definition is finally taken from, its path being the prefix of its locations
+            val definedIn = HashMap<String, String>()
+            val duplicates = mutableListOf<Duplicate>()
+            for ((file, model) in models) {
+                forEachDefinition(model) { path, name ->
+                    definedIn.put(path, file)?.let { duplicates.add(Duplicate(path, name, it, file)) }
+                }
+            }
+
+            val merged = ZdlModel()
+            for ((file, model) in models) {
+                val importsOffset = (merged["imports"] as List<*>).size
+                for ((key, value) in model) {
+                    if (key in NOT_MERGED) continue
+                    merged[key] = mergeValue(key, merged[key], copy(value))
+                }
+                val locations = model.locations
+                for (i in 0 until locations.size) {
+                    val location = locations.key(i)
+                    if (duplicates.isNotEmpty() && definitionOf(location, definedIn)?.let { definedIn[it] != file } == true) continue
+                    val mergedLocation = importLocation(location, importsOffset) ?: location
+                    merged.locations.set(mergedLocation, locations.position(i))
+                    merged.locationFiles[mergedLocation] = file
+                }
+            }
+            return Merged(merged, duplicates)
+        }
+
+        private inline fun forEachDefinition(model: ZdlModel, action: (path: String, name: String) -> Unit) {
+            for (section in DEFINITIONS) {
+                (model[section] as? Map<*, *>)?.keys?.forEach { action("$section.$it", it.toString()) }
+            }
+            // relationship names start with their type, so their locations leave the type out
+            for (byType in model.getRelationships().values) {
+                (byType as? Map<*, *>)?.keys?.forEach { action("relationships.$it", it.toString()) }
+            }
+        }
+
+        /** The definition path [location] is under, if any. */
+        private fun definitionOf(location: String, definitions: Map<String, String>): String? {
+            var dot = location.indexOf('.')
+            while (dot >= 0) {
+                dot = location.indexOf('.', dot + 1)
+                val prefix = if (dot < 0) location else location.substring(0, dot)
+                if (prefix in definitions) return prefix
+            }
+            return null
+        }
+
+        @Suppress("UNCHECKED_CAST")
+        private fun mergeValue(key: String, current: Any?, value: Any?): Any? = when {
+            current is MutableMap<*, *> && value is Map<*, *> -> {
+                current as MutableMap<String, Any?>
+                if (key == "relationships") {
+                    // grouped by relationship type
+                    for ((type, relationships) in value as Map<String, Any?>) {
+                        current[type] = mergeValue(type, current[type], relationships)
+                    }
+                } else {
+                    current.putAll(value as Map<String, Any?>)
+                }
+                current
+            }
+            current is MutableList<*> && value is List<*> -> (current as MutableList<Any?>).apply { addAll(value) }
+            else -> value
+        }
+
+        /** Imports are located by index, which shifts as imports lists are appended. */
+        private fun importLocation(location: String, importsOffset: Int): String? =
+            location.takeIf { it.startsWith("imports.") }?.let { "imports.${it.substringAfter('.').toInt() + importsOffset}" }
+
+        @Suppress("UNCHECKED_CAST")
+        private fun copy(value: Any?): Any? = when (value) {
+            is FluentMap -> FluentMap.build().apply { value.forEach { (k, v) -> put(k, copy(v)) } }
+            is Map<*, *> -> (value as Map<String, Any?>).mapValuesTo(LinkedHashMap()) { copy(it.value) }
+            is List<*> -> value.mapTo(ArrayList()) { copy(it) }
+            else -> value
+        }
+    }
+}
@@ -2,6 +2,8 @@ package io.zenwave360.zdl.antlr
 
 class ZdlModelPostProcessor {
     companion object {
+        internal val ALL_FIELDS = JSONPath.compile("$..fields[*]")
+
         fun postProcess(model: ZdlModel): ZdlModel {
             val aggregates = model.getAggregates()
             val entities = model.getEntities()
@@ -10,32 +12,22 @@ class ZdlModelPostProcessor {
             val enums = model.getEnums()
             val events = model.getEvents()
 
-            val fields = JSONPath.get(model, "$..fields[*]", listOf<MutableMap<String, Any?>>())
-            for (field in fields) {
-                val type = field["type"]
-                if (type != null) {
-                    field["isComplexType"] = false
-                    if (entities.containsKey(type)) {
-                        field["isEntity"] = true
-                        field["isComplexType"] = true
-                    }
-                    if (enums.containsKey(type)) {
-                        field["isEnum"] = true
-                        field["isComplexType"] = true
-                    }
-                    if (inputs.containsKey(type)) {
-                        field["isInput"] = true
-                        field["isComplexType"] = true
-                    }
-                    if (outputs.containsKey(type)) {
-                        field["isOutput"] = true
-                        field["isComplexType"] = true
-                    }
-                    if (events.containsKey(type)) {
-                        field["isEvent"] = true
-                        field["isComplexType"] = true
-                    }
-                }
+            for (match in JSONPath.stream(model, ALL_FIELDS)) {
+                @Suppress("UNCHECKED_CAST")
+                val field = match as? MutableMap<String, Any?> ?: continue
+                val type = field["type"] ?: continue
+                val isEntity = entities.containsKey(type)
+                val isEnum = enums.containsKey(type)
+                val isInput = inputs.containsKey(type)
+                val isOutput = outputs.containsKey(type)
+                val isEvent = events.containsKey(type)
+                // only writes what changes, fields reused from a previous version of the model are often shared with it
+                setFlag(field, "isComplexType", isEntity || isEnum || isInput || isOutput || isEvent)
+                if (isEntity) setFlag(field, "isEntity", true)
+                if (isEnum) setFlag(field, "isEnum", true)
+                if (isInput) setFlag(field, "isInput", true)
+                if (isOutput) setFlag(field, "isOutput", true)
+                if (isEvent) setFlag(field, "isEvent", true)
             }
 
             val allEntitiesAndEnums = mutableMapOf<String, Any?>()
@@ -48,6 +40,10 @@ class ZdlModelPostProcessor {
 
             return model
         }
+
+        private fun setFlag(field: MutableMap<String, Any?>, flag: String, value: Boolean) {
+            if (field[flag] != value) field[flag] = value
+        }
     }
 }
 
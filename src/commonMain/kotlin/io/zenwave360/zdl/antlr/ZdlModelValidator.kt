@@ -1,218 +1,183 @@
 package io.zenwave360.zdl.antlr
 
+import io.zenwave360.zdl.Stopwatch
+import io.zenwave360.zdl.ZdlExecutor
+import io.zenwave360.zdl.ZdlInstrumentation
+import io.zenwave360.zdl.ZdlTypeRegistry
+
 class ZdlModelValidator {
 
-    private val API_ROLES = listOf("provider", "client")
+    companion object {
+        /** Model sections read by the built-in rules, all looked up in one walk of the model. */
+        private val SECTIONS = listOf(
+            "$.apis[*]", "$.relationships[*][*]", "$.entities", "$.inputs", "$.outputs", "$.events", "$.aggregates", "$.services"
+        ).map { JSONPath.compile(it) }
+    }
 
-    private var standardFieldTypes: List<String> = io.zenwave360.zdl.ZdlParser.Companion.STANDARD_FIELD_TYPES
-    private var extraFieldTypes: List<String> = emptyList()
+    private var typeRegistry: ZdlTypeRegistry = ZdlTypeRegistry.STANDARD
+    private var extraFieldTypes: Set<String> = emptySet()
+    private var executor: ZdlExecutor = ZdlExecutor.SEQUENTIAL
+    private var rules: List<ZdlValidationRule> = ZdlValidationRules.BUILT_IN
+    private var disabledRules: Set<String> = emptySet()
+    private var instrumentation: ZdlInstrumentation? = null
+    private var sourceName = ""
 
     fun withStandardFieldTypes(standardFieldTypes: List<String>): ZdlModelValidator {
-        this.standardFieldTypes = standardFieldTypes
+        this.typeRegistry = ZdlTypeRegistry.ofNames(standardFieldTypes)
         return this
     }
 
     fun withExtraFieldTypes(extraFieldTypes: List<String>): ZdlModelValidator {
-        this.extraFieldTypes = extraFieldTypes
+        this.extraFieldTypes = extraFieldTypes.toHashSet()
         return this
     }
 
-    fun validate(model: ZdlModel): ZdlModel {
-        model.clearProblems()
-        validateApis(model)
-        validateEntitiesFields(model, "entities")
-        validateEntitiesFields(model, "inputs")
-        validateEntitiesFields(model, "outputs")
-        validateEntitiesFields(model, "events")
-        validateAggregates(model)
-        validateServices(model)
-        validateRelationships(model)
-        return model
+    fun withTypeRegistry(typeRegistry: ZdlTypeRegistry): ZdlModelValidator {
+        this.typeRegistry = typeRegistry
+        return this
     }
 
-    private fun validateApis(model: ZdlModel) {
-        @Suppress("UNCHECKED_CAST")
-        val apis = JSONPath.get(model, "$.apis[*]", listOf<Map<String, Any?>>()) as List<Map<String, Any?>>
-        for (api in apis) {
-            val role = api["role"] as? String
-            val name = api["name"] as? String
-            if (role == null || !API_ROLES.contains(role)) {
-                model.addProblem(path("apis", name ?: "", "role"), role, "%s is not a valid API role [provider|client]")
-            }
-        }
+    /**
+     * Runs the rules on [executor], [ZdlExecutor.SEQUENTIAL] by default. Rules only read the model and collect
+     * problems on their own, which are added to the model in rule order once all have finished,
+     * so problems come out in the same order with any executor.
+     */
+    fun withExecutor(executor: ZdlExecutor): ZdlModelValidator {
+        this.executor = executor
+        return this
     }
 
-    private fun validateRelationships(model: ZdlModel) {
-        @Suppress("UNCHECKED_CAST")
-        val relationships = JSONPath.get(model, "$.relationships[*][*]", listOf<Map<String, Any?>>()) as List<Map<String, Any?>>
-        for (relationship in relationships) {
-            val type = JSONPath.get(relationship, "$.type") as? String
-            val name = JSONPath.get(relationship, "$.name") as? String
-            val from = JSONPath.get(relationship, "$.from") as? String
-            val to = JSONPath.get(relationship, "$.to") as? String
-            val injectedFieldInFrom = JSONPath.get(relationship, "$.injectedFieldInFrom") as? String
-            val injectedFieldInTo = JSONPath.get(relationship, "$.injectedFieldInTo") as? String
-            if (!isEntity(model, from)) {
-                model.addProblem(path("relationships", name ?: "", "from", "entity"), from ?: "", "%s is not a valid entity")
-            }
-            if (!isEntity(model, to)) {
-                model.addProblem(path("relationships", name ?: "", "to", "entity"), to ?: "", "%s is not a valid entity")
-            }
-            // TODO: validate injectedFieldInFrom and injectedFieldInTo
-        }
+    /** Rules to run, in this order, replacing [ZdlValidationRules.BUILT_IN]. */
+    fun withRules(rules: List<ZdlValidationRule>): ZdlModelValidator {
+        this.rules = rules
+        return this
     }
 
-    private fun validateEntitiesFields(model: ZdlModel, type: String) {
-        @Suppress("UNCHECKED_CAST")
-        val entities = JSONPath.get(model, "$.${type}", mapOf<String, Any?>()) as Map<String, Any?>
-        for ((_, value) in entities) {
-            @Suppress("UNCHECKED_CAST")
-            validateFields(model, value as Map<String, Any?>)
-        }
+    /** Adds [rule] after the configured ones. */
+    fun withRule(rule: ZdlValidationRule): ZdlModelValidator {
+        this.rules = rules + rule
+        return this
     }
 
-    private fun validateFields(model: ZdlModel, entity: Map<String, Any?>) {
-        val entityType = JSONPath.get(entity, "$.type") as? String
-        val entityName = JSONPath.get(entity, "$.name") as? String
-        @Suppress("UNCHECKED_CAST")
-        val fields = JSONPath.get(entity, "$.fields", mapOf<String, Map<String, Any?>>()) as Map<String, Map<String, Any?>>
-        for (field in fields.values) {
-            val fieldName = JSONPath.get(field, "$.name") as? String
-            val fieldType = JSONPath.get(field, "$.type") as? String
-            validateField(model, entityType, entityName, fieldName, fieldType)
-        }
+    /** Skips the rules with these [ZdlValidationRule.id]s, so expensive ones can be left out where latency matters. */
+    fun withDisabledRules(ruleIds: Collection<String>): ZdlModelValidator {
+        this.disabledRules = ruleIds.toHashSet()
+        return this
     }
 
-    private fun validateField(model: ZdlModel, entityType: String?, entityName: String?, fieldName: String?, fieldType: String?) {
-        if (entityType == "entities") {
-            if (!(isStandardFieldType(fieldType) || isEntityOrEnum(model, fieldType))) {
-                model.addProblem(path("entities", entityName ?: "", "fields", fieldName ?: "", "type"), fieldType ?: "", "%s is not a valid type")
-            }
-        } else if (entityType == "inputs") {
-            if (!(isStandardFieldType(fieldType) || isEntityOrEnum(model, fieldType) || isInput(model, fieldType))) {
-                model.addProblem(path("inputs", entityName ?: "", "fields", fieldName ?: "", "type"), fieldType ?: "", "%s is not a valid type")
+    /** Reports the wall time and problem count of each rule to [instrumentation], see [ZdlInstrumentation.ruleCompleted]. */
+    fun withInstrumentation(instrumentation: ZdlInstrumentation?, sourceName: String = ""): ZdlModelValidator {
+        this.instrumentation = instrumentation
+        this.sourceName = sourceName
+        return this
+    }
+
+    fun validate(model: ZdlModel): ZdlModel = validate(model, null)
+
+    /**
+     * Validates [model], a new version of [previous], re-running the [ZdlValidationRule.incremental] rules only for
+     * the top-level elements that are new, changed or removed and for the elements referencing their names.
+     *
+     * Elements count as unchanged when the new model holds the very same node, as models re-parsed from an edit do
+     * (see [io.zenwave360.zdl.ZdlParser.parseModel] with a previous model). [previous] is left as it is, so several
+     * new versions of it can each be validated against it. The whole model is validated when [previous] was validated
+     * with a different configuration, and when [ZdlModel.problemCollector] has limits, as a limited validation does not
+     * see every problem to keep.
+     *
+     * With limits set on [ZdlModel.problemCollector], rules run one after another on the calling thread whatever the
+     * [executor], each one stopping once the model takes no more problems, and the rules left are not run at all.
+     *
+     * A rule throwing an exception is reported as an [ZdlProblemSeverity.ERROR] problem with the rule id as its code,
+     * after the problems it reported until then, and does not stop the other rules.
+     */
+    fun validate(model: ZdlModel, previous: ZdlModel?): ZdlModel {
+        model.clearProblems()
+        val collector = model.problemCollector
+        val sections = JSONPath.getAll(model, SECTIONS)
+        val symbols = ZdlSymbolTable.of(model)
+        val enabledRules = rules.filter { it.id !in disabledRules }
+        val configuration = listOf(typeRegistry, extraFieldTypes, enabledRules)
+        val elements = ZdlReferenceGraph.elementsOf(model)
+        val previousState = previous?.validationState?.takeIf { it.configuration == configuration && !collector.isLimited }
+        val (affected, graph) = previousState?.affectedBy(elements) ?: (null to null)
+
+        val problemsByRule = LinkedHashMap<String, List<ValidationProblem>>()
+        val order = if (affected == null) null else elements.keys.withIndex().associate { (index, element) -> element to index }
+        fun run(rule: ZdlValidationRule): RuleRun {
+            val scope = if (rule.incremental) affected else null
+            val context = ZdlValidationContext(
+                model, symbols, typeRegistry, extraFieldTypes, sections, scope, elements.keys, rule.id, collector.remaining, collector.failFast
+            )
+            val stopwatch = instrumentation?.let { Stopwatch() }
+            val failed = try {
+                rule.validate(context)
+                false
+            } catch (e: Exception) {
+                context.addFailure(e)
+                true
             }
-        } else if (entityType == "outputs") {
-            if (!(isStandardFieldType(fieldType) || isEntityOrEnum(model, fieldType) || isInput(model, fieldType) || isOutput(model, fieldType))) {
-                model.addProblem(path("outputs", entityName ?: "", "fields", fieldName ?: "", "type"), fieldType ?: "", "%s is not a valid type")
+            return RuleRun(context.problems, stopwatch?.nanos ?: 0, failed)
+        }
+        fun report(rule: ZdlValidationRule, run: RuleRun) {
+            var problems: List<ValidationProblem> = run.problems
+            if (previousState != null && affected != null && order != null && rule.incremental) {
+                val kept = previousState.problems[rule.id].orEmpty().filter { it.element !in affected && it.element in order }
+                // back in model order, as a full validation reports them
+                problems = (kept + problems).sortedBy { order[it.element] ?: Int.MAX_VALUE }
             }
-        } else if (entityType == "events") {
-            if (!(isStandardFieldType(fieldType) || isEntityOrEnum(model, fieldType) || isEvent(model, fieldType))) {
-                model.addProblem(path("events", entityName ?: "", "fields", fieldName ?: "", "type"), fieldType ?: "", "%s is not a valid type")
+            problemsByRule[rule.id] = problems
+            for (problem in problems) {
+                collector.add(problem.path, problem.value, problem.error, problem.severity, problem.code)
             }
+            instrumentation?.ruleCompleted(sourceName, rule.id, run.wallTimeNanos, problems.size)
         }
-    }
 
-    private fun validateAggregates(model: ZdlModel): List<Map<String, Any?>>? {
-        @Suppress("UNCHECKED_CAST")
-        val services = JSONPath.get(model, "$.aggregates", mapOf<String, Any?>()) as Map<String, Any?>
-        for ((key, value) in services) {
-            val aggregateRoot = JSONPath.get(value, "$.aggregateRoot") as? String
-            if (aggregateRoot == null || !isEntity(model, aggregateRoot)) {
-                model.addProblem(path("aggregates", key, "aggregateRoot"), aggregateRoot ?: "", "%s is not an entity")
-            }
-
-            @Suppress("UNCHECKED_CAST")
-            val methods = JSONPath.get(value, "$.commands[*]", listOf<Map<String, Any?>>()) as List<Map<String, Any?>>
-            for (method in methods) {
-                val methodName = JSONPath.get(method, "$.name") as? String
-                val parameter = JSONPath.get(method, "$.parameter") as? String
-                if (parameter != null && !isEntity(model, parameter) && !isInput(model, parameter)) {
-                    model.addProblem(path("aggregates", key, "commands", methodName ?: "", "parameter"), parameter, "%s is not an entity or input")
-                }
-                @Suppress("UNCHECKED_CAST")
-                val withEvents = (method["withEvents"] ?: emptyList<Any>()) as List<Any>
-                for ((i, event) in withEvents.withIndex()) {
-                    if (event is List<*>) {
-                        for ((j, inner) in event.withIndex()) {
-                            val innerEvent = inner as? String
-                            if (!isEvent(model, innerEvent)) {
-                                model.addProblem(path("aggregates", key, "commands", methodName ?: "", "withEvents", "$i", "$j"), innerEvent ?: "", "%s is not an event")
-                            }
-                        }
-                    } else {
-                        val e = event as? String
-                        if (!isEvent(model, e)) {
-                            model.addProblem(path("aggregates", key, "commands", methodName ?: "", "withEvents", "$i"), e ?: "", "%s is not an event")
-                        }
-                    }
-                }
+        val runs = if (collector.isLimited) {
+            // which problems a limited validation keeps depends on rule order: rules run in order, each only while the
+            // model takes more problems and only up to as many as it still takes
+            enabledRules.mapNotNull { rule -> if (collector.isFull) null else run(rule).also { report(rule, it) } }
+        } else {
+            executor.invokeAll(enabledRules.map { rule -> { run(rule) } }).also { runs ->
+                for ((rule, run) in enabledRules.zip(runs)) report(rule, run)
             }
         }
-        return null
+        // a failed rule may have missed problems an incremental validation would keep
+        val complete = !collector.isLimited && runs.none { it.failed }
+        model.validationState = if (!complete) null else ValidationState(configuration, elements, problemsByRule, graph)
+        return model
     }
 
-    private fun validateServices(model: ZdlModel): List<Map<String, Any?>>? {
-        @Suppress("UNCHECKED_CAST")
-        val services = JSONPath.get(model, "$.services", mapOf<String, Any?>()) as Map<String, Any?>
-        for ((key, value) in services) {
-            @Suppress("UNCHECKED_CAST")
-            val aggregates = JSONPath.get(value, "$.aggregates", listOf<String>()) as List<String>
-            for (aggregate in aggregates) {
-                if (aggregate.isNotEmpty() && !isAggregate(model, aggregate)) {
-                    model.addProblem(path("services", key, "aggregates"), aggregate, "%s is not an aggregate")
-                }
-            }
+    private class RuleRun(val problems: List<ValidationProblem>, val wallTimeNanos: Long, val failed: Boolean)
+}
 
-            @Suppress("UNCHECKED_CAST")
-            val methods = JSONPath.get(value, "$.methods[*]", listOf<Map<String, Any?>>()) as List<Map<String, Any?>>
-            for (method in methods) {
-                val methodName = JSONPath.get(method, "$.name") as? String
-                val parameter = JSONPath.get(method, "$.parameter") as? String
-                if (parameter != null && !isEntity(model, parameter) && !isInput(model, parameter)) {
-                    model.addProblem(path("services", key, "methods", methodName ?: "", "parameter"), parameter, "%s is not an entity or input")
-                }
-                val returnType = JSONPath.get(method, "$.returnType") as? String
-                if (returnType != null && !isEntity(model, returnType) && !isInput(model, returnType) && !isOutput(model, returnType)) {
-                    model.addProblem(path("services", key, "methods", methodName ?: "", "returnType"), returnType, "%s is not an entity, input or output")
-                }
-                @Suppress("UNCHECKED_CAST")
-                val withEvents = (method["withEvents"] ?: emptyList<Any>()) as List<Any>
-                for ((i, event) in withEvents.withIndex()) {
-                    if (event is List<*>) {
-                        for ((j, inner) in event.withIndex()) {
-                            val innerEvent = inner as? String
-                            if (!isEvent(model, innerEvent)) {
-                                model.addProblem(path("services", key, "methods", methodName ?: "", "withEvents", "$i", "$j"), innerEvent ?: "", "%s is not an event")
-                            }
-                        }
-                    } else {
-                        val e = event as? String
-                        if (!isEvent(model, e)) {
-                            model.addProblem(path("services", key, "methods", methodName ?: "", "withEvents", "$i"), e ?: "", "%s is not an event")
-                        }
-                    }
-                }
-            }
+/** What the last validation of a model saw, so the next version of the model can be validated incrementally. */
+internal class ValidationState(
+    val configuration: Any,
+    private val elements: Map<String, Map<String, Any?>>,
+    val problems: Map<String, List<ValidationProblem>>,
+    graph: ZdlReferenceGraph?,
+) {
+    /** Built on the first incremental validation, then copied with the changed elements of each new version. */
+    private var graph: ZdlReferenceGraph? = graph
+
+    /**
+     * Elements of the new version [nodes] that are new, changed or removed, or reference a name one of those defines,
+     * and the reference graph of [nodes]. This state is left as it is.
+     */
+    fun affectedBy(nodes: Map<String, Map<String, Any?>>): Pair<Set<String>, ZdlReferenceGraph> {
+        val changed = LinkedHashSet<String>()
+        for ((element, node) in nodes) {
+            if (elements[element] !== node) changed.add(element)
+        }
+        for (element in elements.keys) {
+            if (element !in nodes) changed.add(element)
+        }
+        val previous = graph ?: ZdlReferenceGraph.of(elements).also { graph = it }
+        val graph = previous.updated(changed, nodes)
+        val affected = HashSet(changed)
+        for (element in changed) {
+            ZdlReferenceGraph.definedName(element)?.let { affected.addAll(graph.referencedBy(it)) }
         }
-        return null
+        return affected to graph
     }
-
-    private fun path(vararg path: String): String = path.joinToString(".")
-
-    private fun isStandardFieldType(fieldType: String?): Boolean =
-        fieldType != null && (standardFieldTypes.contains(fieldType) || extraFieldTypes.contains(fieldType))
-
-    private fun isEntity(model: ZdlModel, entityName: String?): Boolean =
-        JSONPath.get<String>(model, "$.entities.$entityName") != null
-
-    private fun isEnum(model: ZdlModel, entityName: String?): Boolean =
-        JSONPath.get<String>(model, "$.enums.$entityName") != null
-
-    private fun isInput(model: ZdlModel, entityName: String?): Boolean =
-        JSONPath.get<String>(model, "$.inputs.$entityName") != null
-
-    private fun isOutput(model: ZdlModel, entityName: String?): Boolean =
-        JSONPath.get<String>(model, "$.outputs.$entityName") != null
-
-    private fun isEvent(model: ZdlModel, entityName: String?): Boolean =
-        JSONPath.get<String>(model, "$.events.$entityName") != null
-
-    private fun isEntityOrEnum(model: ZdlModel, entityName: String?): Boolean =
-        isEntity(model, entityName) || isEnum(model, entityName)
-
-    private fun isAggregate(model: ZdlModel, entityName: String?): Boolean =
-        JSONPath.get<String>(model, "$.aggregates.$entityName") != null ||
-                (JSONPath.get(model, "$.entities.$entityName.options.aggregate", false) as Boolean)
 }
-
@@ -0,0 +1,119 @@
+package io.zenwave360.zdl.antlr
+
+enum class ZdlProblemSeverity { ERROR, WARNING, INFO }
+
+/**
+ * A problem found in a model. Reads as the map [ZdlModel.getProblems] entries always were (`path`, `location`,
+ * `value`, `message`, plus `file` for merged models) with its `severity` and `code`.
+ *
+ * The location is only looked up, and the message only formatted, when read: models with many problems mostly
+ * get counted or shown a few at a time.
+ */
+class ZdlProblem internal constructor(
+    /** Path of the element with the problem, qualified as `file#path` for models merged from several files. */
+    val path: String,
+    val value: String?,
+    private val error: String,
+    val severity: ZdlProblemSeverity,
+    val code: String?,
+    val file: String?,
+    locate: () -> IntArray?,
+) : AbstractMutableMap<String, Any?>() {
+
+    val location: IntArray? by lazy(locate)
+
+    val message: String by lazy { error.replace("%s", value ?: "") }
+
+    private val entryMap = lazy {
+        val map = LinkedHashMap<String, Any?>()
+        if (file != null) map["file"] = file
+        map["path"] = path
+        map["location"] = location
+        map["value"] = value
+        map["message"] = message
+        map["severity"] = severity.name
+        map["code"] = code
+        map
+    }
+
+    override val entries: MutableSet<MutableMap.MutableEntry<String, Any?>> get() = entryMap.value.entries
+
+    override fun put(key: String, value: Any?): Any? = entryMap.value.put(key, value)
+
+    override fun get(key: String): Any? {
+        if (entryMap.isInitialized()) return entryMap.value[key]
+        return when (key) {
+            "file" -> file
+            "path" -> path
+            "location" -> location
+            "value" -> value
+            "message" -> message
+            "severity" -> severity.name
+            "code" -> code
+            else -> null
+        }
+    }
+
+    override fun containsKey(key: String): Boolean = entryMap.value.containsKey(key)
+
+    /** Same path, message and severity: the collector keeps only the first of equal problems. */
+    internal val key: String get() = "$path\u0000$error\u0000$value\u0000$severity"
+}
+
+/**
+ * Adds problems to a model, skipping duplicates and stopping at [maxProblems] or, with [failFast], at the first
+ * [ZdlProblemSeverity.ERROR]. Problems dropped for either limit are counted in [dropped]; duplicates are not.
+ */
+class ZdlProblemCollector internal constructor(private val model: ZdlModel) {
+
+    var maxProblems: Int = Int.MAX_VALUE
+        set(value) {
+            require(value >= 0) { "maxProblems must not be negative: $value" }
+            field = value
+        }
+
+    var failFast: Boolean = false
+
+    /** Problems not added because the collector was already full. */
+    var dropped: Int = 0
+        private set
+
+    private val keys = HashSet<String>()
+    private var errors = 0
+
+    /** Whether limits are set, so a full validation may not have reported every problem. */
+    val isLimited: Boolean get() = maxProblems != Int.MAX_VALUE || failFast
+
+    /** Whether new problems are dropped, so validations can stop looking for more. */
+    val isFull: Boolean get() = size >= maxProblems || (failFast && errors > 0)
+
+    val size: Int get() = problems().size
+
+    /** How many more problems fit before [isFull], ignoring [failFast]. */
+    val remaining: Int get() = (maxProblems - size).coerceAtLeast(0)
+
+    fun add(path: String, value: String?, error: String, severity: ZdlProblemSeverity = ZdlProblemSeverity.ERROR, code: String? = null): Boolean {
+        if (isFull) {
+            dropped++
+            return false
+        }
+        val file = model.getLocationFile(path)
+        val problem = ZdlProblem(if (file == null) path else "$file#$path", value, error, severity, code, file) {
+            model.getLocations()[path] as? IntArray
+        }
+        if (!keys.add(problem.key)) return false
+        if (severity == ZdlProblemSeverity.ERROR) errors++
+        problems().add(problem)
+        return true
+    }
+
+    fun clear() {
+        problems().clear()
+        keys.clear()
+        errors = 0
+        dropped = 0
+    }
+
+    @Suppress("UNCHECKED_CAST")
+    private fun problems() = model["problems"] as MutableList<Any?>
+}
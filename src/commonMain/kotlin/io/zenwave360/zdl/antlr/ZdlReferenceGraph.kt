@@ -0,0 +1,122 @@
+package io.zenwave360.zdl.antlr
+
+/**
+ * Which names each top-level element of a [ZdlModel] references, and the reverse: which elements reference a name.
+ *
+ * Elements are keyed like their locations and problem paths: `entities.Customer`, `services.OrdersService`,
+ * `relationships.OneToMany_Customer{addresses}_Address`... References are field types, aggregate roots,
+ * command and method parameters, return types and events, service aggregates and relationship ends.
+ */
+class ZdlReferenceGraph private constructor() {
+
+    private val references = LinkedHashMap<String, Set<String>>()
+    private val referencedBy = HashMap<String, MutableSet<String>>()
+
+    val elements: Set<String> get() = references.keys
+
+    fun references(element: String): Set<String> = references[element] ?: emptySet()
+
+    fun referencedBy(name: String): Set<String> = referencedBy[name] ?: emptySet()
+
+    /**
+     * A copy with the references of [changed] elements replaced by the ones of their [nodes], dropping elements no
+     * longer there. This graph is left as it is, so it can be updated for several versions of its model.
+     */
+    internal fun updated(changed: Collection<String>, nodes: Map<String, Map<String, Any?>>): ZdlReferenceGraph {
+        val graph = ZdlReferenceGraph()
+        graph.references.putAll(references)
+        for ((name, elements) in referencedBy) graph.referencedBy[name] = LinkedHashSet(elements)
+        for (element in changed) {
+            graph.references.remove(element)?.forEach { name -> graph.referencedBy[name]?.remove(element) }
+            nodes[element]?.let { graph.add(element, it) }
+        }
+        return graph
+    }
+
+    private fun add(element: String, node: Map<String, Any?>) {
+        val names = referencesOf(element, node)
+        references[element] = names
+        for (name in names) {
+            referencedBy.getOrPut(name) { LinkedHashSet() }.add(element)
+        }
+    }
+
+    override fun toString() = "ZdlReferenceGraph$references"
+
+    companion object {
+        private val FIELD_SECTIONS = setOf("entities", "inputs", "outputs", "events")
+        private val SECTIONS = listOf("apis", "entities", "enums", "inputs", "outputs", "events", "aggregates", "services")
+
+        fun of(model: ZdlModel): ZdlReferenceGraph = of(elementsOf(model))
+
+        internal fun of(nodes: Map<String, Map<String, Any?>>): ZdlReferenceGraph {
+            val graph = ZdlReferenceGraph()
+            for ((element, node) in nodes) graph.add(element, node)
+            return graph
+        }
+
+        /** Every top-level element of [model] by key, in model order. */
+        internal fun elementsOf(model: ZdlModel): LinkedHashMap<String, Map<String, Any?>> {
+            val elements = LinkedHashMap<String, Map<String, Any?>>()
+            for (section in SECTIONS) {
+                val entries = model[section] as? Map<*, *> ?: continue
+                for ((name, node) in entries) {
+                    @Suppress("UNCHECKED_CAST")
+                    (node as? Map<String, Any?>)?.let { elements["$section.$name"] = it }
+                }
+            }
+            val relationships = model["relationships"] as? Map<*, *>
+            for (byType in relationships?.values ?: emptyList()) {
+                for ((name, node) in byType as? Map<*, *> ?: continue) {
+                    @Suppress("UNCHECKED_CAST")
+                    (node as? Map<String, Any?>)?.let { elements["relationships.$name"] = it }
+                }
+            }
+            return elements
+        }
+
+        /** The name [element] defines, if other elements can reference it. */
+        internal fun definedName(element: String): String? {
+            val section = element.substringBefore('.')
+            return if (section == "services" || section == "apis" || section == "relationships") null else element.substringAfter('.')
+        }
+
+        private fun referencesOf(element: String, node: Map<String, Any?>): Set<String> {
+            val names = LinkedHashSet<String>()
+            when (element.substringBefore('.')) {
+                in FIELD_SECTIONS -> (node["fields"] as? Map<*, *>)?.values?.forEach { field ->
+                    ((field as? Map<*, *>)?.get("type") as? String)?.let { names.add(it) }
+                }
+                "aggregates" -> {
+                    (node["aggregateRoot"] as? String)?.let { names.add(it) }
+                    addMethods(node["commands"], names)
+                }
+                "services" -> {
+                    (node["aggregates"] as? List<*>)?.forEach { (it as? String)?.let { name -> names.add(name) } }
+                    addMethods(node["methods"], names)
+                }
+                "relationships" -> {
+                    (node["from"] as? String)?.let { names.add(it) }
+                    (node["to"] as? String)?.let { names.add(it) }
+                }
+            }
+            return names
+        }
+
+        private fun addMethods(methods: Any?, names: MutableSet<String>) {
+            for (method in (methods as? Map<*, *>)?.values ?: emptyList()) {
+                method as? Map<*, *> ?: continue
+                (method["parameter"] as? String)?.let { names.add(it) }
+                (method["returnType"] as? String)?.let { names.add(it) }
+                addEvents(method["withEvents"], names)
+            }
+        }
+
+        private fun addEvents(events: Any?, names: MutableSet<String>) {
+            when (events) {
+                is String -> names.add(events)
+                is List<*> -> events.forEach { addEvents(it, names) }
+            }
+        }
+    }
+}
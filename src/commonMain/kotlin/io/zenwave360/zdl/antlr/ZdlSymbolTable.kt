@@ -0,0 +1,76 @@
+package io.zenwave360.zdl.antlr
+
+/** Kinds of named definitions in a [ZdlModel], with the model section holding them. */
+enum class ZdlSymbolKind(val section: String) {
+    ENTITY("entities"),
+    ENUM("enums"),
+    INPUT("inputs"),
+    OUTPUT("outputs"),
+    EVENT("events"),
+    AGGREGATE("aggregates");
+}
+
+/**
+ * Every name defined in a [ZdlModel], with the kinds it is defined as and the model node of each definition.
+ * Built with one pass over the model sections, so checking a type reference is a single map lookup.
+ *
+ * Entities with the `@aggregate` option are also [ZdlSymbolKind.AGGREGATE] symbols, defined by the entity node
+ * unless an aggregate of the same name exists. The table is a snapshot: it does not follow later model changes.
+ */
+class ZdlSymbolTable private constructor(private val symbols: Map<String, Symbol>) {
+
+    class Symbol internal constructor(val name: String) {
+        private val nodes = LinkedHashMap<ZdlSymbolKind, Map<String, Any?>>(2)
+
+        val kinds: Set<ZdlSymbolKind> get() = nodes.keys
+
+        fun isA(kind: ZdlSymbolKind): Boolean = nodes.containsKey(kind)
+
+        fun definition(kind: ZdlSymbolKind): Map<String, Any?>? = nodes[kind]
+
+        internal fun define(kind: ZdlSymbolKind, node: Map<String, Any?>) {
+            if (!nodes.containsKey(kind)) nodes[kind] = node
+        }
+
+        override fun toString() = "$name$kinds"
+    }
+
+    val size: Int get() = symbols.size
+
+    val names: Set<String> get() = symbols.keys
+
+    operator fun get(name: String?): Symbol? = if (name == null) null else symbols[name]
+
+    fun isA(name: String?, kind: ZdlSymbolKind): Boolean = get(name)?.isA(kind) == true
+
+    fun isAny(name: String?, vararg kinds: ZdlSymbolKind): Boolean {
+        val symbol = get(name) ?: return false
+        return kinds.any { symbol.isA(it) }
+    }
+
+    fun definition(name: String?, kind: ZdlSymbolKind): Map<String, Any?>? = get(name)?.definition(kind)
+
+    companion object {
+        fun of(model: ZdlModel): ZdlSymbolTable {
+            val symbols = HashMap<String, Symbol>()
+            val aggregateEntities = ArrayList<Symbol>()
+            for (kind in ZdlSymbolKind.entries) {
+                val section = model[kind.section] as? Map<*, *> ?: continue
+                for ((name, node) in section) {
+                    @Suppress("UNCHECKED_CAST")
+                    val definition = node as? Map<String, Any?> ?: continue
+                    val symbol = symbols.getOrPut(name as String) { Symbol(name) }
+                    symbol.define(kind, definition)
+                    if (kind == ZdlSymbolKind.ENTITY && (definition["options"] as? Map<*, *>)?.get("aggregate") == true) {
+                        aggregateEntities.add(symbol)
+                    }
+                }
+            }
+            // after the aggregates section, which defines them first when both exist
+            for (symbol in aggregateEntities) {
+                symbol.define(ZdlSymbolKind.AGGREGATE, symbol.definition(ZdlSymbolKind.ENTITY)!!)
+            }
+            return ZdlSymbolTable(symbols)
+        }
+    }
+}
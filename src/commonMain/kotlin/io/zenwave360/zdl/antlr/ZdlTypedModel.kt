@@ -0,0 +1,239 @@
+package io.zenwave360.zdl.antlr
+
+/**
+ * Typed, read-only model of a [ZdlModel]: entities, enums, aggregates, services... as classes with properties, so
+ * code reading a model does not look up string keys and cast every value it reads.
+ *
+ * Each section is built once, on first access, with every property read from the model nodes then, and built again
+ * after [ZdlModel.changed]. Maps and lists come as read-only views of the model ones, and every element exposes the
+ * model node it was built from as [ZdlElement.map], which is the map shape template engines and JSONPath expect.
+ */
+class ZdlTypedModel private constructor(private val model: ZdlModel) {
+
+    private var sections: Sections? = null
+
+    val config: Map<String, Any?> get() = sections().config
+
+    val entities: Map<String, ZdlEntity> get() = sections().entities
+
+    val inputs: Map<String, ZdlEntity> get() = sections().inputs
+
+    val outputs: Map<String, ZdlEntity> get() = sections().outputs
+
+    val events: Map<String, ZdlEntity> get() = sections().events
+
+    val enums: Map<String, ZdlEnum> get() = sections().enums
+
+    val aggregates: Map<String, ZdlAggregate> get() = sections().aggregates
+
+    val services: Map<String, ZdlService> get() = sections().services
+
+    /** Relationships by name, of all types. */
+    val relationships: Map<String, ZdlRelationship> get() = sections().relationships
+
+    /** The sections built for the current [ZdlModel.version]. */
+    private fun sections(): Sections {
+        val version = model.version
+        return sections?.takeIf { it.version == version } ?: Sections(model, version).also { sections = it }
+    }
+
+    override fun toString() = "ZdlTypedModel(entities=${entities.keys}, services=${services.keys})"
+
+    companion object {
+        fun of(model: ZdlModel): ZdlTypedModel = ZdlTypedModel(model)
+    }
+
+    private class Sections(model: ZdlModel, val version: Int) {
+        val config: Map<String, Any?> = readOnlyNode(model["config"])
+        val entities by lazy { elements(model["entities"], ::ZdlEntity) }
+        val inputs by lazy { elements(model["inputs"], ::ZdlEntity) }
+        val outputs by lazy { elements(model["outputs"], ::ZdlEntity) }
+        val events by lazy { elements(model["events"], ::ZdlEntity) }
+        val enums by lazy { elements(model["enums"], ::ZdlEnum) }
+        val aggregates by lazy { elements(model["aggregates"], ::ZdlAggregate) }
+        val services by lazy { elements(model["services"], ::ZdlService) }
+        val relationships by lazy {
+            val relationships = LinkedHashMap<String, ZdlRelationship>()
+            for (byType in nodeOf(model["relationships"]).values) {
+                for ((name, node) in nodeOf(byType)) relationships[name] = ZdlRelationship(nodeOf(node))
+            }
+            Elements(relationships)
+        }
+    }
+}
+
+/** An element of a [ZdlTypedModel], built from its model node. Elements built from the same node are equal. */
+abstract class ZdlElement internal constructor(private val node: Map<String, Any?>) {
+
+    /** Read-only view of the model node this element was built from. */
+    val map: Map<String, Any?> = ReadOnlyMap(node)
+
+    /** Null for elements whose node has no name. */
+    val name: String? = node["name"] as String?
+    val javadoc: String? = node["javadoc"] as String?
+
+    override fun equals(other: Any?): Boolean = other is ZdlElement && other::class == this::class && other.node === node
+
+    override fun hashCode(): Int = name.hashCode()
+
+    override fun toString() = "${this::class.simpleName}($name)"
+}
+
+/** An entity, input, output or event, which share the same shape. */
+class ZdlEntity internal constructor(node: Map<String, Any?>) : ZdlElement(node) {
+    val className: String? = node["className"] as String? ?: name
+    val tableName: String? = node["tableName"] as String?
+    val options: Map<String, Any?> = readOnlyNode(node["options"])
+    val fields: Map<String, ZdlField> = elements(node["fields"], ::ZdlField)
+    val isAggregate: Boolean = options["aggregate"] == true
+}
+
+class ZdlField internal constructor(node: Map<String, Any?>) : ZdlElement(node) {
+    val type: String? = node["type"] as String?
+    val initialValue: String? = node["initialValue"] as String?
+    val isArray: Boolean = node["isArray"] == true
+    val isEnum: Boolean = node["isEnum"] == true
+    val isEntity: Boolean = node["isEntity"] == true
+    val isComplexType: Boolean = node["isComplexType"] == true
+    val options: Map<String, Any?> = readOnlyNode(node["options"])
+
+    /** Validation values by name: `required` to `""`, `maxlength` to `"100"`... */
+    val validations: Map<String, Any?> = ReadOnlyMap(nodeOf(node["validations"]).mapValues { (_, validation) -> readOnly(nodeOf(validation)["value"]) })
+}
+
+class ZdlEnum internal constructor(node: Map<String, Any?>) : ZdlElement(node) {
+    val className: String? = node["className"] as String? ?: name
+    val values: Map<String, ZdlEnumValue> = elements(node["values"], ::ZdlEnumValue)
+}
+
+class ZdlEnumValue internal constructor(node: Map<String, Any?>) : ZdlElement(node) {
+    val value: String? = node["value"]?.toString()
+}
+
+class ZdlAggregate internal constructor(node: Map<String, Any?>) : ZdlElement(node) {
+    val className: String? = node["className"] as String? ?: name
+    val aggregateRoot: String? = node["aggregateRoot"] as String?
+    val commands: Map<String, ZdlCommand> = elements(node["commands"], ::ZdlCommand)
+}
+
+class ZdlCommand internal constructor(node: Map<String, Any?>) : ZdlElement(node) {
+    val parameter: String? = node["parameter"] as String?
+
+    /** Events, each a name or a list of alternative names. */
+    val withEvents: List<Any?> = listOrEmpty(node["withEvents"])
+    val eventNames: Set<String> = eventNames(withEvents)
+}
+
+class ZdlService internal constructor(node: Map<String, Any?>) : ZdlElement(node) {
+    val className: String? = node["className"] as String? ?: name
+    val aggregates: List<String> = listOrEmpty(node["aggregates"]).map { it.toString() }
+    val methods: Map<String, ZdlMethod> = elements(node["methods"], ::ZdlMethod)
+}
+
+class ZdlMethod internal constructor(node: Map<String, Any?>) : ZdlElement(node) {
+    val serviceName: String? = node["serviceName"] as String?
+    val paramId: String? = node["paramId"] as String?
+    val naturalId: Boolean = node["naturalId"] == true
+    val parameter: String? = node["parameter"] as String?
+    val returnType: String? = node["returnType"] as String?
+    val returnTypeIsArray: Boolean = node["returnTypeIsArray"] == true
+    val returnTypeIsOptional: Boolean = node["returnTypeIsOptional"] == true
+    val options: Map<String, Any?> = readOnlyNode(node["options"])
+
+    /** Events, each a name or a list of alternative names. */
+    val withEvents: List<Any?> = listOrEmpty(node["withEvents"])
+    val eventNames: Set<String> = eventNames(withEvents)
+}
+
+class ZdlRelationship internal constructor(node: Map<String, Any?>) : ZdlElement(node) {
+    /** `OneToOne`, `ManyToOne`, `OneToMany` or `ManyToMany`. */
+    val type: String? = node["type"] as String?
+    val from: String? = node["from"] as String?
+    val to: String? = node["to"] as String?
+    val injectedFieldInFrom: String? = node["injectedFieldInFrom"] as String?
+    val injectedFieldInTo: String? = node["injectedFieldInTo"] as String?
+    val commentInFrom: String? = node["commentInFrom"] as String?
+    val commentInTo: String? = node["commentInTo"] as String?
+    val isInjectedFieldInFromRequired: Boolean = node["isInjectedFieldInFromRequired"] == true
+    val isInjectedFieldInToRequired: Boolean = node["isInjectedFieldInToRequired"] == true
+    val fromOptions: Map<String, Any?> = readOnlyNode(node["fromOptions"])
+    val toOptions: Map<String, Any?> = readOnlyNode(node["toOptions"])
+}
+
+@Suppress("UNCHECKED_CAST")
+private fun nodeOf(value: Any?): Map<String, Any?> = value as? Map<String, Any?> ?: emptyMap()
+
+private fun readOnlyNode(value: Any?): Map<String, Any?> = ReadOnlyMap(nodeOf(value))
+
+private fun listOrEmpty(value: Any?): List<Any?> = if (value is List<*>) ReadOnlyList(value) else emptyList()
+
+private fun <T> elements(value: Any?, create: (Map<String, Any?>) -> T): Map<String, T> {
+    val nodes = nodeOf(value)
+    val elements = LinkedHashMap<String, T>(nodes.size)
+    for ((name, node) in nodes) elements[name] = create(nodeOf(node))
+    return Elements(elements)
+}
+
+private fun readOnly(value: Any?): Any? = when (value) {
+    is ReadOnlyMap, is ReadOnlyList -> value
+    is Map<*, *> -> ReadOnlyMap(nodeOf(value))
+    is List<*> -> ReadOnlyList(value)
+    else -> value
+}
+
+/** Read-only view of a model map, its nested maps and lists being read-only views too. */
+private class ReadOnlyMap(private val node: Map<String, Any?>) : AbstractMap<String, Any?>() {
+    override val size: Int get() = node.size
+    override fun containsKey(key: String): Boolean = node.containsKey(key)
+    override fun get(key: String): Any? = readOnly(node[key])
+    override val entries: Set<Map.Entry<String, Any?>> = object : AbstractSet<Map.Entry<String, Any?>>() {
+        override val size: Int get() = node.size
+        override fun iterator(): Iterator<Map.Entry<String, Any?>> {
+            val entries = node.entries.iterator()
+            return object : Iterator<Map.Entry<String, Any?>> {
+                override fun hasNext() = entries.hasNext()
+                override fun next(): Map.Entry<String, Any?> = entries.next().let { ViewEntry(it.key, readOnly(it.value)) }
+            }
+        }
+    }
+}
+
+/** Read-only view of a model list, its nested maps and lists being read-only views too. */
+private class ReadOnlyList(private val list: List<*>) : AbstractList<Any?>() {
+    override val size: Int get() = list.size
+    override fun get(index: Int): Any? = readOnly(list[index])
+}
+
+/** Elements of a model section by name, built once. */
+private class Elements<T>(private val elements: Map<String, T>) : AbstractMap<String, T>() {
+    override val size: Int get() = elements.size
+    override fun containsKey(key: String): Boolean = elements.containsKey(key)
+    override fun get(key: String): T? = elements[key]
+    override val entries: Set<Map.Entry<String, T>> = object : AbstractSet<Map.Entry<String, T>>() {
+        override val size: Int get() = elements.size
+        override fun iterator(): Iterator<Map.Entry<String, T>> {
+            val entries = elements.entries.iterator()
+            return object : Iterator<Map.Entry<String, T>> {
+                override fun hasNext() = entries.hasNext()
+                override fun next(): Map.Entry<String, T> = entries.next()
+            }
+        }
+    }
+}
+
+private class ViewEntry<V>(override val key: String, override val value: V) : Map.Entry<String, V> {
+    override fun equals(other: Any?): Boolean = other is Map.Entry<*, *> && key == other.key && value == other.value
+    override fun hashCode(): Int = key.hashCode() xor value.hashCode()
+    override fun toString(): String = "$key=$value"
+}
+
+private fun eventNames(events: List<Any?>): Set<String> {
+    val names = LinkedHashSet<String>()
+    for (event in events) {
+        when (event) {
+            is String -> names.add(event)
+            is List<*> -> event.forEach { if (it is String) names.add(it) }
+        }
+    }
+    return names
+}
@@ -0,0 +1,118 @@
+package io.zenwave360.zdl.antlr
+
+import io.zenwave360.zdl.ZdlTypeRegistry
+
+/**
+ * A check [ZdlModelValidator] runs over a model, see [ZdlValidationRules] for the built-in ones.
+ *
+ * Rules may run concurrently with each other, so they should only read the model and report through the context.
+ */
+interface ZdlValidationRule {
+
+    /** Unique name, used to disable the rule and to report its timing. */
+    val id: String
+
+    /**
+     * Whether the rule only validates elements [ZdlValidationContext.startElement] says are affected, reporting their
+     * problems after starting them. Problems of the other elements are then kept from the previous validation.
+     * Rules that are not incremental run over the whole model every time.
+     */
+    val incremental: Boolean get() = false
+
+    fun validate(context: ZdlValidationContext)
+
+    companion object {
+        fun of(id: String, incremental: Boolean = false, validate: (ZdlValidationContext) -> Unit): ZdlValidationRule = object : ZdlValidationRule {
+            override val id = id
+            override val incremental = incremental
+            override fun validate(context: ZdlValidationContext) = validate(context)
+            override fun toString() = "ZdlValidationRule($id)"
+        }
+    }
+}
+
+/** What a [ZdlValidationRule] reads, and the problems it reports. Each rule run gets its own context. */
+class ZdlValidationContext internal constructor(
+    val model: ZdlModel,
+    val symbols: ZdlSymbolTable,
+    val typeRegistry: ZdlTypeRegistry,
+    private val extraFieldTypes: Set<String>,
+    private val sections: Map<String, Any?>,
+    private val affected: Set<String>?,
+    private val elements: Set<String>,
+    private val ruleId: String,
+    private val maxProblems: Int = Int.MAX_VALUE,
+    private val failFast: Boolean = false,
+) {
+    internal val problems = ArrayList<ValidationProblem>()
+    private var errors = 0
+
+    /** The top-level element being validated, see [startElement]. */
+    var element: String? = null
+        private set
+
+    /**
+     * Whether the model will not take more problems from this rule, so it can stop validating: it has reported as
+     * many problems as the model still takes, or an error with [ZdlProblemCollector.failFast].
+     */
+    val isFull: Boolean get() = problems.size >= maxProblems || (failFast && errors > 0)
+
+    /**
+     * Whether the top-level [element] (`entities.Customer`, `services.OrdersService`...) needs validating:
+     * always on a full validation, only when it or something it references changed on an incremental one.
+     */
+    fun isAffected(element: String): Boolean = affected == null || element in affected
+
+    /**
+     * Starts validating the top-level [element] when [isAffected], returning false when it can be skipped. Problems
+     * reported next belong to it, and are kept or dropped with it by incremental validations: element names may
+     * contain dots, so problems can not always tell their element from their path. Problems reported before any
+     * element is started belong to the element their path starts with.
+     */
+    fun startElement(element: String): Boolean {
+        if (!isAffected(element)) return false
+        this.element = element
+        return true
+    }
+
+    /** Whether [type] is a field type valid without a model definition. */
+    fun isFieldType(type: String?): Boolean = type != null && (type in typeRegistry || type in extraFieldTypes)
+
+    /** [JSONPath.get] on the model, answered from the sections all built-in rules read in one walk when possible. */
+    fun section(path: String): Any? = if (sections.containsKey(path)) sections[path] else JSONPath.get(model, path)
+
+    /** Reports a problem at [path], [error] being the message with `%s` standing for [value]; [code] defaults to the rule id. */
+    fun addProblem(path: String, value: String?, error: String, severity: ZdlProblemSeverity = ZdlProblemSeverity.ERROR, code: String? = null) {
+        if (isFull) return
+        if (severity == ZdlProblemSeverity.ERROR) errors++
+        problems.add(ValidationProblem(path, value, error, severity, code ?: ruleId, element ?: elementOf(path)))
+    }
+
+    /** Reports the rule failing with [e], even when [isFull], as the model would otherwise look valid. */
+    internal fun addFailure(e: Exception) {
+        errors++
+        problems.add(ValidationProblem("", e.message ?: e.toString(), "Validation rule $ruleId failed: %s", ZdlProblemSeverity.ERROR, ruleId, ""))
+    }
+
+    /** The shortest top-level element [path] is in, or [path] itself. */
+    private fun elementOf(path: String): String {
+        var dot = path.indexOf('.')
+        while (dot >= 0) {
+            dot = path.indexOf('.', dot + 1)
+            val prefix = if (dot < 0) path else path.substring(0, dot)
+            if (prefix in elements) return prefix
+        }
+        return path
+    }
+}
+
+/** A problem as reported by a rule, turned into a model problem once all rules have run. */
+internal class ValidationProblem(
+    val path: String,
+    val value: String?,
+    val error: String,
+    val severity: ZdlProblemSeverity,
+    val code: String?,
+    /** The top-level element the problem belongs to, see [ZdlValidationContext.startElement]. */
+    val element: String,
+)
@@ -0,0 +1,221 @@
+package io.zenwave360.zdl.antlr
+
+/** The rules [ZdlModelValidator] runs by default, in this order. */
+object ZdlValidationRules {
+
+    /** API roles are `provider` or `client`. */
+    val APIS = ZdlValidationRule.of("apis", incremental = true) { it.validateApis() }
+
+    /** Entity field types are standard types, entities or enums. */
+    val ENTITIES = ZdlValidationRule.of("entities", incremental = true) { it.validateEntitiesFields("entities") }
+
+    /** Input field types are standard types, entities, enums or inputs. */
+    val INPUTS = ZdlValidationRule.of("inputs", incremental = true) { it.validateEntitiesFields("inputs") }
+
+    /** Output field types are standard types, entities, enums, inputs or outputs. */
+    val OUTPUTS = ZdlValidationRule.of("outputs", incremental = true) { it.validateEntitiesFields("outputs") }
+
+    /** Event field types are standard types, entities, enums or events. */
+    val EVENTS = ZdlValidationRule.of("events", incremental = true) { it.validateEntitiesFields("events") }
+
+    /** Aggregate roots, command parameters and command events are defined. */
+    val AGGREGATES = ZdlValidationRule.of("aggregates", incremental = true) { it.validateAggregates() }
+
+    /** Service aggregates, method parameters, return types and events are defined. */
+    val SERVICES = ZdlValidationRule.of("services", incremental = true) { it.validateServices() }
+
+    /** Both ends of every relationship are entities. */
+    val RELATIONSHIPS = ZdlValidationRule.of("relationships", incremental = true) { it.validateRelationships() }
+
+    val BUILT_IN: List<ZdlValidationRule> = listOf(APIS, ENTITIES, INPUTS, OUTPUTS, EVENTS, AGGREGATES, SERVICES, RELATIONSHIPS)
+
+    private val API_ROLES = listOf("provider", "client")
+
+    private fun ZdlValidationContext.validateApis() {
+        @Suppress("UNCHECKED_CAST")
+        val apis = (section("$.apis[*]") ?: listOf<Map<String, Any?>>()) as List<Map<String, Any?>>
+        for (api in apis) {
+            if (isFull) return
+            val role = api["role"] as? String
+            val name = api["name"] as? String
+            if (!startElement("apis.$name")) continue
+            if (role == null || !API_ROLES.contains(role)) {
+                addProblem(path("apis", name ?: "", "role"), role, "%s is not a valid API role [provider|client]")
+            }
+        }
+    }
+
+    private fun ZdlValidationContext.validateRelationships() {
+        @Suppress("UNCHECKED_CAST")
+        val relationships = (section("$.relationships[*][*]") ?: listOf<Map<String, Any?>>()) as List<Map<String, Any?>>
+        for (relationship in relationships) {
+            if (isFull) return
+            val type = JSONPath.get(relationship, "$.type") as? String
+            val name = JSONPath.get(relationship, "$.name") as? String
+            if (!startElement("relationships.$name")) continue
+            val from = JSONPath.get(relationship, "$.from") as? String
+            val to = JSONPath.get(relationship, "$.to") as? String
+            val injectedFieldInFrom = JSONPath.get(relationship, "$.injectedFieldInFrom") as? String
+            val injectedFieldInTo = JSONPath.get(relationship, "$.injectedFieldInTo") as? String
+            if (!isEntity(from)) {
+                addProblem(path("relationships", name ?: "", "from", "entity"), from ?: "", "%s is not a valid entity")
+            }
+            if (!isEntity(to)) {
+                addProblem(path("relationships", name ?: "", "to", "entity"), to ?: "", "%s is not a valid entity")
+            }
+            // TODO: validate injectedFieldInFrom and injectedFieldInTo
+        }
+    }
+
+    private fun ZdlValidationContext.validateEntitiesFields(type: String) {
+        @Suppress("UNCHECKED_CAST")
+        val entities = (section("$.${type}") ?: mapOf<String, Any?>()) as Map<String, Any?>
+        for ((key, value) in entities) {
+            if (isFull) return
+            if (!startElement("$type.$key")) continue
+            @Suppress("UNCHECKED_CAST")
+            validateFields(value as Map<String, Any?>)
+        }
+    }
+
+    private fun ZdlValidationContext.validateFields(entity: Map<String, Any?>) {
+        val entityType = JSONPath.get(entity, "$.type") as? String
+        val entityName = JSONPath.get(entity, "$.name") as? String
+        @Suppress("UNCHECKED_CAST")
+        val fields = JSONPath.get(entity, "$.fields", mapOf<String, Map<String, Any?>>()) as Map<String, Map<String, Any?>>
+        for (field in fields.values) {
+            val fieldName = JSONPath.get(field, "$.name") as? String
+            val fieldType = JSONPath.get(field, "$.type") as? String
+            validateField(entityType, entityName, fieldName, fieldType)
+        }
+    }
+
+    private fun ZdlValidationContext.validateField(entityType: String?, entityName: String?, fieldName: String?, fieldType: String?) {
+        if (entityType == "entities") {
+            if (!(isFieldType(fieldType) || isEntityOrEnum(fieldType))) {
+                addProblem(path("entities", entityName ?: "", "fields", fieldName ?: "", "type"), fieldType ?: "", "%s is not a valid type")
+            }
+        } else if (entityType == "inputs") {
+            if (!(isFieldType(fieldType) || isEntityOrEnum(fieldType) || isInput(fieldType))) {
+                addProblem(path("inputs", entityName ?: "", "fields", fieldName ?: "", "type"), fieldType ?: "", "%s is not a valid type")
+            }
+        } else if (entityType == "outputs") {
+            if (!(isFieldType(fieldType) || isEntityOrEnum(fieldType) || isInput(fieldType) || isOutput(fieldType))) {
+                addProblem(path("outputs", entityName ?: "", "fields", fieldName ?: "", "type"), fieldType ?: "", "%s is not a valid type")
+            }
+        } else if (entityType == "events") {
+            if (!(isFieldType(fieldType) || isEntityOrEnum(fieldType) || isEvent(fieldType))) {
+                addProblem(path("events", entityName ?: "", "fields", fieldName ?: "", "type"), fieldType ?: "", "%s is not a valid type")
+            }
+        }
+    }
+
+    private fun ZdlValidationContext.validateAggregates(): List<Map<String, Any?>>? {
+        @Suppress("UNCHECKED_CAST")
+        val services = (section("$.aggregates") ?: mapOf<String, Any?>()) as Map<String, Any?>
+        for ((key, value) in services) {
+            if (isFull) return null
+            if (!startElement("aggregates.$key")) continue
+            val aggregateRoot = JSONPath.get(value, "$.aggregateRoot") as? String
+            if (aggregateRoot == null || !isEntity(aggregateRoot)) {
+                addProblem(path("aggregates", key, "aggregateRoot"), aggregateRoot ?: "", "%s is not an entity")
+            }
+
+            @Suppress("UNCHECKED_CAST")
+            val methods = JSONPath.get(value, "$.commands[*]", listOf<Map<String, Any?>>()) as List<Map<String, Any?>>
+            for (method in methods) {
+                val methodName = JSONPath.get(method, "$.name") as? String
+                val parameter = JSONPath.get(method, "$.parameter") as? String
+                if (parameter != null && !isEntity(parameter) && !isInput(parameter)) {
+                    addProblem(path("aggregates", key, "commands", methodName ?: "", "parameter"), parameter, "%s is not an entity or input")
+                }
+                @Suppress("UNCHECKED_CAST")
+                val withEvents = (method["withEvents"] ?: emptyList<Any>()) as List<Any>
+                for ((i, event) in withEvents.withIndex()) {
+                    if (event is List<*>) {
+                        for ((j, inner) in event.withIndex()) {
+                            val innerEvent = inner as? String
+                            if (!isEvent(innerEvent)) {
+                                addProblem(path("aggregates", key, "commands", methodName ?: "", "withEvents", "$i", "$j"), innerEvent ?: "", "%s is not an event")
+                            }
+                        }
+                    } else {
+                        val e = event as? String
+                        if (!isEvent(e)) {
+                            addProblem(path("aggregates", key, "commands", methodName ?: "", "withEvents", "$i"), e ?: "", "%s is not an event")
+                        }
+                    }
+                }
+            }
+        }
+        return null
+    }
+
+    private fun ZdlValidationContext.validateServices(): List<Map<String, Any?>>? {
+        @Suppress("UNCHECKED_CAST")
+        val services = (section("$.services") ?: mapOf<String, Any?>()) as Map<String, Any?>
+        for ((key, value) in services) {
+            if (isFull) return null
+            if (!startElement("services.$key")) continue
+            @Suppress("UNCHECKED_CAST")
+            val aggregates = JSONPath.get(value, "$.aggregates", listOf<String>()) as List<String>
+            for (aggregate in aggregates) {
+                if (aggregate.isNotEmpty() && !isAggregate(aggregate)) {
+                    addProblem(path("services", key, "aggregates"), aggregate, "%s is not an aggregate")
+                }
+            }
+
+            @Suppress("UNCHECKED_CAST")
+            val methods = JSONPath.get(value, "$.methods[*]", listOf<Map<String, Any?>>()) as List<Map<String, Any?>>
+            for (method in methods) {
+                val methodName = JSONPath.get(method, "$.name") as? String
+                val parameter = JSONPath.get(method, "$.parameter") as? String
+                if (parameter != null && !isEntity(parameter) && !isInput(parameter)) {
+                    addProblem(path("services", key, "methods", methodName ?: "", "parameter"), parameter, "%s is not an entity or input")
+                }
+                val returnType = JSONPath.get(method, "$.returnType") as? String
+                if (returnType != null && !isEntity(returnType) && !isInput(returnType) && !isOutput(returnType)) {
+                    addProblem(path("services", key, "methods", methodName ?: "", "returnType"), returnType, "%s is not an entity, input or output")
+                }
+                @Suppress("UNCHECKED_CAST")
+                val withEvents = (method["withEvents"] ?: emptyList<Any>()) as List<Any>
+                for ((i, event) in withEvents.withIndex()) {
+                    if (event is List<*>) {
+                        for ((j, inner) in event.withIndex()) {
+                            val innerEvent = inner as? String
+                            if (!isEvent(innerEvent)) {
+                                addProblem(path("services", key, "methods", methodName ?: "", "withEvents", "$i", "$j"), innerEvent ?: "", "%s is not an event")
+                            }
+                        }
+                    } else {
+                        val e = event as? String
+                        if (!isEvent(e)) {
+                            addProblem(path("services", key, "methods", methodName ?: "", "withEvents", "$i"), e ?: "", "%s is not an event")
+                        }
+                    }
+                }
+            }
+        }
+        return null
+    }
+
+    private fun path(vararg path: String): String = path.joinToString(".")
+
+    private fun ZdlValidationContext.isEntity(entityName: String?): Boolean =
+        symbols.isA(entityName, ZdlSymbolKind.ENTITY)
+
+    private fun ZdlValidationContext.isInput(entityName: String?): Boolean =
+        symbols.isA(entityName, ZdlSymbolKind.INPUT)
+
+    private fun ZdlValidationContext.isOutput(entityName: String?): Boolean =
+        symbols.isA(entityName, ZdlSymbolKind.OUTPUT)
+
+    private fun ZdlValidationContext.isEvent(entityName: String?): Boolean =
+        symbols.isA(entityName, ZdlSymbolKind.EVENT)
+
+    private fun ZdlValidationContext.isEntityOrEnum(entityName: String?): Boolean =
+        symbols.isAny(entityName, ZdlSymbolKind.ENTITY, ZdlSymbolKind.ENUM)
+
+    private fun ZdlValidationContext.isAggregate(entityName: String?): Boolean =
+        symbols.isA(entityName, ZdlSymbolKind.AGGREGATE)
+}
@@ -0,0 +1,62 @@
+package io.zenwave360.zdl
+
+import io.zenwave360.zdl.antlr.JSONPath
+import kotlin.test.*
+
+class ZdlImportResolverTest {
+
+    @Test
+    fun parseModelWithImports() {
+        val sources = mapOf(
+            "common/types.zdl" to "enum Status { ACTIVE, INACTIVE }\nentity Address {\n    street String\n}\n",
+            "customers/customer.zdl" to "@import(\"../common/types.zdl\")\nentity Customer {\n    status Status\n    address Address\n}\n",
+            "orders/order.zdl" to "@import(\"../common/types.zdl\")\n@import(\"/customers/customer.zdl\")\n@import(\"missing.zdl\")\n" +
+                "entity Order {\n    customer Customer\n    status Status\n}\n",
+            "cycle/a.zdl" to "@import(\"b.zdl\")\nentity A {\n    b B\n}\n",
+            "cycle/b.zdl" to "@import(\"a.zdl\")\nentity B {\n    a A\n}\n",
+        )
+        val cache = ZdlParseCache()
+        val parser = ZdlParser().withImportLoader(ZdlImportLoader.fromMap(sources)).withParseCache(cache)
+
+        val model = parser.parseModelWithImports("orders/order.zdl")
+        assertEquals(listOf("Address", "Customer", "Order"), model.getEntities().keys.toList())
+        assertEquals(true, JSONPath.get(model, "$.entities.Customer.fields.status.isEnum"))
+        assertEquals("common/types.zdl", model.getLocationFile("enums.Status"))
+        assertEquals(listOf("orders/order.zdl#imports.3"), model.getProblems().map { it["path"] })
+        assertEquals(3, (model.getProblems()[0]["location"] as IntArray)[2])
+        assertEquals(2, cache.size)
+
+        parser.parseModelWithImports("customers/customer.zdl")
+        assertEquals(2, cache.size, "imports are parsed once")
+
+        val cycle = parser.parseModelWithImports("cycle/a.zdl")
+        assertEquals(setOf("A", "B"), cycle.getEntities().keys)
+        assertEquals(listOf("a.zdl is part of an import cycle: cycle/a.zdl -> cycle/b.zdl -> cycle/a.zdl"), cycle.getProblems().map { it["message"] })
+        assertEquals("cycle/b.zdl", cycle.getProblems()[0]["file"])
+    }
+
+    @Test
+    fun parseModelWithImports_ParseCache() {
+        val sources = mapOf(
+            "a.zdl" to "entity A {\n    name String\n}\n",
+            "b.zdl" to "entity B {\n    name String\n}\n",
+            "c.zdl" to "@import(\"a.zdl\")\n@import(\"b.zdl\")\nentity C {\n    a A\n}\n",
+        )
+        val loader = ZdlImportLoader.fromMap(sources)
+        assertEquals(setOf("A", "B", "C"), ZdlParser().withImportLoader(loader).parseModelWithImports("c.zdl").getEntities().keys)
+
+        // room for one of the imports only, the least recently used one is evicted
+        val cache = ZdlParseCache(maxLength = sources.getValue("a.zdl").length + 1L)
+        val model = ZdlParser().withImportLoader(loader).withParseCache(cache).parseModelWithImports("c.zdl")
+        assertEquals(setOf("A", "B", "C"), model.getEntities().keys)
+        assertEquals(1, cache.size)
+        assertEquals(sources.getValue("b.zdl").length.toLong(), cache.length)
+        cache.clear()
+        assertEquals(0L, cache.length)
+
+        assertEquals("ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad", Sha256.digest("abc"))
+        assertEquals("248d6a61d20638b8e5c026930c3e6039a33ce45964ff2167f6ecedd419db06c1",
+            Sha256.digest("abcdbcdecdefdefgefghfghighijhijkijkljklmklmnlmnomnopnopq"))
+        assertEquals("e3b0c44298fc1c149afbf4c8996fb92427ae41e4649b934ca495991b7852b855", Sha256.digest(""))
+    }
+}
@@ -0,0 +1,75 @@
+package io.zenwave360.zdl
+
+import io.zenwave360.zdl.antlr.editAt
+import io.zenwave360.zdl.antlr.printAsJson
+import io.zenwave360.zdl.antlr.readTestFile
+import kotlin.test.*
+
+class ZdlIncrementalParserTest {
+
+    @Test
+    fun parseModel_Incremental() {
+        val parser = ZdlParser().withKeepSource(true)
+        val source = readTestFile("complete.zdl")
+        val edits = listOf(
+            // renames a field inside an entity
+            editAt(source, "orderTime Instant", "orderTime", "orderedAt"),
+            // adds a line inside a service
+            editAt(source, "    @put(\"/{orderId}\")", "", "    cancelOrder(id) CustomerOrder\n"),
+            // adds a relationship to the first relationships block of its type
+            editAt(source, "    Address{customer} to Customer", "", "    Customer{mainAddress} to Address\n"),
+            // renames an enum, the fields typed with it are no longer enum fields
+            editAt(source, "enum OrderStatus {", "OrderStatus", "OrderStatuses"),
+            // renames an entity, its references now fail validation
+            editAt(source, "entity CustomerOrder {", "CustomerOrder", "CustomerOrders"),
+            // breaks the syntax, falls back to a full parse
+            editAt(source, "entity CustomerOrder {", "{", ""),
+            // outside of any top-level definition, falls back to a full parse
+            editAt(source, "basePackage \"io.zenwave360.example\"", "example", "sample"),
+        )
+        for (edit in edits) {
+            val previous = parser.parseModel(source)
+            val before = printAsJson(previous)
+            val model = parser.parseModel(previous, edit)
+            val expected = parser.parseModel(edit.applyTo(source))
+            assertEquals(printAsJson(expected), printAsJson(model), edit.toString())
+            assertEquals(before, printAsJson(previous), "previous model is left as it was: $edit")
+            assertEquals(edit.applyTo(source), model.source)
+        }
+
+        // only the edited entity was parsed again
+        val previous = parser.parseModel(source)
+        val model = parser.parseModel(previous, edits[0])
+        assertSame(previous.getEntities()["Aggregate2"], model.getEntities()["Aggregate2"])
+        assertNotSame(previous.getEntities()["CustomerOrder"], model.getEntities()["CustomerOrder"])
+    }
+
+    @Test
+    fun parseModel_Incremental_Source() {
+        val source = readTestFile("complete.zdl")
+        val edit = editAt(source, "orderTime Instant", "orderTime", "orderedAt")
+        val parser = ZdlParser()
+        val previous = parser.parseModel(source)
+        assertNull(previous.source)
+        assertFailsWith<IllegalArgumentException> { parser.parseModel(previous, edit) }
+        val model = parser.parseModel(previous, source, edit)
+        assertEquals(printAsJson(parser.parseModel(edit.applyTo(source))), printAsJson(model))
+        assertNull(model.source)
+    }
+
+    @Test
+    fun parseModel_Incremental_Chained() {
+        val parser = ZdlParser().withKeepSource(true)
+        var source = readTestFile("complete.zdl")
+        var model = parser.parseModel(source)
+        val offset = source.indexOf("orderTime Instant")
+        // retypes a field name one keystroke at a time, going through invalid states
+        val edits = listOf(ZdlTextEdit(offset, "orderTime".length, "")) +
+            "orderedAt".mapIndexed { i, char -> ZdlTextEdit(offset + i, 0, char.toString()) }
+        for (edit in edits) {
+            model = parser.parseModel(model, edit)
+            source = edit.applyTo(source)
+            assertEquals(printAsJson(parser.parseModel(source)), printAsJson(model), edit.toString())
+        }
+    }
+}
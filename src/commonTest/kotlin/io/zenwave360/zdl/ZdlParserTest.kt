@@ -0,0 +1,115 @@
+package io.zenwave360.zdl
+
+import io.zenwave360.zdl.antlr.JSONPath
+import io.zenwave360.zdl.antlr.ZdlModel
+import io.zenwave360.zdl.antlr.printAsJson
+import io.zenwave360.zdl.antlr.readTestFile
+import io.zenwave360.zdl.fixtures.SyntheticZdlGenerator
+import kotlin.test.*
+
+class ZdlParserTest {
+
+    @Test
+    fun parseZdl_Problems_ExtraTypes_DoesNotMutateParser() {
+        val parser = ZdlParser()
+        parser.withExtraFieldTypes(listOf("OrderStatusX"))
+        val problems = JSONPath.get(parser.parseModel(readTestFile("problems.zdl")), "$.problems", emptyList<Any>())
+        assertEquals(14, problems.size)
+    }
+
+    @Test
+    fun parseModels_Batch() {
+        val fileNames = listOf("complete.zdl", "problems.zdl", "nested-fields.zdl", "complete.zdl")
+        val parser = ZdlParser()
+        val models = parser.parseModels(fileNames.map { readTestFile(it) })
+        assertEquals(fileNames.size, models.size)
+        for ((fileName, model) in fileNames.zip(models)) {
+            val expected = parseZdl(fileName)
+            assertEquals(expected.getEntities().keys, model.getEntities().keys)
+            assertEquals(expected.getProblems().size, model.getProblems().size)
+        }
+    }
+
+    @Test
+    fun parseModel_TwoStage() {
+        val fileNames = listOf("complete.zdl", "composed.zdl", "legacy.jdl", "nested-fields.zdl", "nested-input-output-model.zdl",
+            "policies.zdl", "problems.zdl", "suffix_javadoc.zdl", "unrecognized-tokens.zdl")
+        val parser = ZdlParser().withParseMode(ZdlParser.ParseMode.TWO_STAGE)
+        for (fileName in fileNames) {
+            val expected = parseZdl(fileName)
+            val model = parser.parseModel(readTestFile(fileName))
+            assertEquals(printAsJson(expected), printAsJson(model), fileName)
+        }
+        assertEquals(fileNames.size.toLong(), parser.statistics.parses)
+        assertTrue(parser.statistics.fallbacks < parser.statistics.parses)
+
+        // configured copies count in the same statistics, unless given their own
+        parser.withMaxProblems(10).parseModel(readTestFile("complete.zdl"))
+        assertEquals(fileNames.size + 1L, parser.statistics.parses)
+        val statistics = ZdlParseStatistics()
+        val separate = parser.withStatistics(statistics)
+        separate.withFailFast(true).parseModel(readTestFile("complete.zdl"))
+        assertEquals(1L, statistics.parses)
+        assertSame(statistics, separate.statistics)
+        assertEquals(fileNames.size + 1L, parser.statistics.parses)
+    }
+
+    @Test
+    fun parseModel_Instrumentation() {
+        val phases = mutableListOf<ZdlParsePhase>()
+        val metrics = mutableListOf<ZdlParseMetrics>()
+        val instrumentation = object : ZdlInstrumentation {
+            override fun phaseCompleted(sourceName: String, phase: ZdlParsePhase, wallTimeNanos: Long, allocatedBytes: Long) {
+                phases.add(phase)
+            }
+            override fun parseCompleted(parseMetrics: ZdlParseMetrics) {
+                metrics.add(parseMetrics)
+            }
+        }
+        for (streaming in listOf(false, true)) {
+            phases.clear()
+            metrics.clear()
+            val parser = ZdlParser().withParseMode(ZdlParser.ParseMode.TWO_STAGE).withStreaming(streaming).withInstrumentation(instrumentation)
+            val model = parser.parseModel(readTestFile("complete.zdl"))
+            assertEquals(ZdlParsePhase.entries.toList(), phases, "streaming=$streaming")
+            val parseMetrics = metrics.single()
+            assertTrue(parseMetrics.tokens > 1000)
+            assertTrue(parseMetrics.parseTreeNodes > parseMetrics.tokens / 2)
+            assertEquals(model.getLocations().size, parseMetrics.locations)
+            assertEquals(model.getProblems().size, parseMetrics.problems)
+            assertEquals(1, parseMetrics.sllParses)
+            assertEquals(0, parseMetrics.llFallbacks)
+            assertTrue(parseMetrics.wallTimeNanos.values.all { it >= 0 })
+        }
+    }
+
+    @Test
+    fun parseModel_Streaming() {
+        val fileNames = listOf("complete.zdl", "composed.zdl", "legacy.jdl", "nested-fields.zdl", "nested-input-output-model.zdl",
+            "policies.zdl", "problems.zdl", "suffix_javadoc.zdl", "unrecognized-tokens.zdl")
+        for (parseMode in ZdlParser.ParseMode.entries) {
+            val parser = ZdlParser().withParseMode(parseMode).withStreaming(true)
+            for (fileName in fileNames) {
+                val expected = parseZdl(fileName)
+                val model = parser.parseModel(readTestFile(fileName))
+                assertEquals(printAsJson(expected), printAsJson(model), "$parseMode $fileName")
+            }
+        }
+    }
+
+    @Test
+    fun parseZdl_Synthetic() {
+        for (scale in listOf(1, 10)) {
+            val source = SyntheticZdlGenerator.ofScale(scale, seed = 7).generate()
+            val model = ZdlParser().parseModel(source)
+            assertEquals(emptyList(), model.getProblems(), "scale $scale")
+            assertTrue(model.getEntities().size >= 4 * scale)
+            assertEquals(setOf("OneToOne", "OneToMany", "ManyToOne", "ManyToMany"), model.getRelationships().keys)
+            assertTrue(model.getAggregates().isNotEmpty() && model.getInputs().isNotEmpty() && model.getOutputs().isNotEmpty())
+        }
+        assertEquals(SyntheticZdlGenerator(seed = 1).generate(), SyntheticZdlGenerator(seed = 1).generate())
+        assertNotEquals(SyntheticZdlGenerator(seed = 1).generate(), SyntheticZdlGenerator(seed = 2).generate())
+    }
+
+    private fun parseZdl(fileName: String): ZdlModel = ZdlParser().parseModel(readTestFile(fileName))
+}
@@ -11,6 +11,7 @@ import kotlin.test.assertNull
 import kotlin.test.assertNotNull
 import kotlin.test.assertTrue
 import kotlin.test.assertFalse
+import kotlin.test.assertSame
 
 class JSONPathTest {
 
@@ -240,4 +241,123 @@ class JSONPathTest {
         val allTypes = JSONPath.get(jsonMap, "$..fields[*].type", listOf<String>())
         assertEquals(109, allTypes.size)
     }
+
+    @Test
+    fun testCompiledPaths() {
+        val compiled = JSONPath.compile("$..fields[*].type")
+        assertEquals(JSONPath.get(jsonMap, "$..fields[*].type", listOf<String>()), JSONPath.get(jsonMap, compiled, listOf<String>()))
+        assertEquals("io.zenwave360.example.orders", JSONPath.get(jsonMap, JSONPath.compile("$.config.basePackage")))
+        assertNull(JSONPath.get<String>(null, compiled))
+
+        JSONPath.clearCache()
+        repeat(JSONPath.CACHE_SIZE * 2) { JSONPath.get<Any>(jsonMap, "$.entities.Entity$it") }
+        assertTrue(JSONPath.cachedPaths <= JSONPath.CACHE_SIZE)
+        assertEquals("io.zenwave360.example.orders", JSONPath.get(jsonMap, "$.config.basePackage"))
+    }
+
+    @Test
+    fun testStream() {
+        for (path in listOf("$..fields[*]", "$..fields[*].type", "$..name", "$.relationships[*][*]", "$.entities[*]", "$.config.basePackage", "$.imports", "$.missing[*]")) {
+            assertEquals(JSONPath.collect(jsonMap, JSONPath.compile(path), mutableListOf()), JSONPath.stream(jsonMap, path).toList(), path)
+        }
+        assertEquals(109, JSONPath.stream(jsonMap, "$..fields[*]").count())
+        assertEquals(JSONPath.get<List<Any?>>(jsonMap, "$..fields[*].type")!!.first(), JSONPath.stream(jsonMap, "$..fields[*].type").first())
+        assertTrue(JSONPath.stream(null, "$..fields[*]").none())
+    }
+
+    @Test
+    fun testGetAll() {
+        val paths = listOf("$", "$.entities", "$.entities[*]", "$.entities[*].fields[*].type", "$..fields[*]", "$..fields[*].type",
+            "$..name", "$.relationships[*][*]", "$.relationships[*]", "$.imports", "$.imports[0]", "$.imports[*]", "$..options[*]",
+            "$..[*].name", "$..fields..name", "$.services[*].methods[*].name", "$.config.basePackage", "$.missing[*]", "$.javadoc[*]", "$..[0]")
+        val results = JSONPath.getAll(jsonMap, paths)
+        assertEquals(paths, results.keys.toList())
+        for (path in paths) {
+            assertEquals(JSONPath.get<Any>(jsonMap, path), results[path], path)
+        }
+        assertEquals(mapOf("$.entities" to null), JSONPath.getAll(null, listOf("$.entities")))
+    }
+
+    /** Nested lists, empty lists and maps, nulls and missing keys; expected values are those of the previous evaluator. */
+    private val nested = mapOf(
+        "a" to listOf(listOf(1, 2), listOf(3, listOf(4, 5)), emptyList<Any?>()),
+        "b" to mapOf(
+            "x" to mapOf("name" to "bx", "items" to listOf(mapOf("name" to "i1"), mapOf("name" to "i2"))),
+            "y" to mapOf("name" to "by", "items" to emptyList<Any?>()),
+            "z" to mapOf("other" to 1),
+        ),
+        "c" to emptyList<Any?>(),
+        "d" to emptyMap<String, Any?>(),
+        "n" to null,
+        "name" to "root",
+    )
+
+    @Test
+    fun testNestedWildcards() {
+        assertEquals(listOf(listOf(1, 2), listOf(3, listOf(4, 5)), emptyList()), JSONPath.get(nested, "$.a[*]"))
+        assertEquals(listOf(1, 2, 3, listOf(4, 5)), JSONPath.get(nested, "$.a[*][*]"))
+        assertEquals(listOf(4, 5), JSONPath.get(nested, "$.a[*][*][*]"))
+        assertEquals(4, JSONPath.get(nested, "$.a[1][1][0]"))
+        assertEquals(listOf("bx", "by"), JSONPath.get(nested, "$.b[*].name"))
+        assertEquals(listOf("i1", "i2"), JSONPath.get(nested, "$.b[*].items[*].name"))
+        // lists found under a wildcard are flattened into its result
+        assertEquals(2, JSONPath.get<List<*>>(nested, "$.b[*].items")?.size)
+        assertEquals(emptyList<Any?>(), JSONPath.get(nested, "$.b[*].missing"))
+    }
+
+    @Test
+    fun testRecursiveDescentUnderWildcards() {
+        assertEquals(listOf("root", "bx", "i1", "i2", "by"), JSONPath.get(nested, "$..name"))
+        assertEquals(listOf("bx", "i1", "i2", "by"), JSONPath.get(nested, "$.b[*]..name"))
+        assertEquals(listOf("i1", "i2"), JSONPath.get(nested, "$.b..items[*].name"))
+        assertEquals(listOf("bx", "by", "i1", "i2"), JSONPath.get(nested, "$..[*].name"))
+        assertEquals(listOf("bx", "i1", "i2"), JSONPath.get(nested, "$..x..name"))
+        assertEquals(listOf(1, 2, 3, listOf(4, 5), 1, 2, 3, 4, 5, 4, 5), JSONPath.get(nested, "$.a..[*]"))
+        assertEquals(listOf(3, 4, 5, 2, 4, 5, 5, mapOf("name" to "i2")), JSONPath.get(nested, "$..[1]"))
+        assertEquals(emptyList<Any?>(), JSONPath.get(nested, "$..missing"))
+    }
+
+    @Test
+    fun testMissingKeysAndEmptyLists() {
+        assertEquals(emptyList<Any?>(), JSONPath.get(nested, "$.c"))
+        assertEquals(emptyList<Any?>(), JSONPath.get(nested, "$.c[*]"))
+        assertEquals(emptyList<Any?>(), JSONPath.get(nested, "$.c[*].name"))
+        assertEquals(emptyList<Any?>(), JSONPath.get(nested, "$..c[*]"))
+        assertEquals(emptyMap<String, Any?>(), JSONPath.get(nested, "$.d"))
+        assertEquals(emptyList<Any?>(), JSONPath.get(nested, "$.d[*]"))
+        assertEquals(emptyList<Any?>(), JSONPath.get(nested, "$.d[*].name"))
+        for (path in listOf("$.a[9]", "$.a[x]", "$.b.z.items[*]", "$.n", "$.n[*]", "$.n.name", "$.missing", "$.missing[*]",
+            "$.missing..name", "$.name[*]", "$.name.length")) {
+            assertNull(JSONPath.get(nested, path), path)
+            assertEquals("default", JSONPath.get(nested, path, "default"), path)
+        }
+    }
+
+    @Test
+    fun testCollect() {
+        val paths = listOf("$.a", "$.a[*]", "$.a[*][*]", "$.a[1][1][0]", "$.a[9]", "$.b[*]", "$.b[*].name", "$.b[*].items[*].name",
+            "$..name", "$..items", "$.b[*]..name", "$..[*].name", "$.a..[*]", "$..[1]", "$.c", "$.c[*]", "$.d", "$.d[*]", "$.n",
+            "$.missing", "$.missing[*]", "$.name", "$.name[*]")
+        for (path in paths) {
+            // get's result, a list at the end of the path adding its elements
+            val expected = when (val value = JSONPath.get<Any>(nested, path)) {
+                null -> emptyList()
+                is List<*> -> value
+                else -> listOf(value)
+            }
+            assertEquals(expected, JSONPath.collect(nested, JSONPath.compile(path), mutableListOf()), path)
+        }
+        assertEquals(listOf<Any?>("root"), JSONPath.collect(nested, JSONPath.compile("$.name"), mutableListOf()))
+        assertEquals(listOf<Any?>(listOf(1, 2), listOf(3, listOf(4, 5)), emptyList<Any?>()), JSONPath.collect(nested, JSONPath.compile("$.a"), mutableListOf()))
+
+        // the sink is appended to and returned, so it can be reused across queries
+        val sink = mutableListOf<Any?>("first")
+        assertSame(sink, JSONPath.collect(nested, JSONPath.compile("$.b[*].name"), sink))
+        assertEquals(listOf<Any?>("first", "bx", "by"), JSONPath.collect(nested, JSONPath.compile("$.missing[*]"), sink))
+        assertEquals(setOf<Any?>("i1", "i2"), JSONPath.collect(nested, JSONPath.compile("$..items[*].name"), linkedSetOf()))
+        assertEquals(emptyList<Any?>(), JSONPath.collect(null, JSONPath.compile("$..name"), mutableListOf()))
+
+        val fields = JSONPath.collect(jsonMap, JSONPath.compile("$..fields[*]"), mutableListOf())
+        assertEquals(JSONPath.get<List<Any?>>(jsonMap, "$..fields[*]"), fields)
+    }
 }
@@ -0,0 +1,9 @@
+package io.zenwave360.zdl.antlr
+
+import io.zenwave360.zdl.ZdlTextEdit
+
+/** Replaces [text], found inside the first [context] in [source], with [replacement]. */
+internal fun editAt(source: String, context: String, text: String, replacement: String): ZdlTextEdit {
+    val offset = source.indexOf(context) + context.indexOf(text)
+    return ZdlTextEdit(offset, text.length, replacement)
+}
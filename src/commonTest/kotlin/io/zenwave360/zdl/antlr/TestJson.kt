@@ -0,0 +1,55 @@
+package io.zenwave360.zdl.antlr
+
+// Prints models as JSON-like text, to compare them in one assertion with a readable diff.
+
+@Suppress("UNCHECKED_CAST")
+internal fun printMapAsJson(map: Map<String, Any?>, indent: String = ""): String {
+    return buildString {
+        append("{\n")
+        map.entries.forEachIndexed { index, (key, value) ->
+            append("$indent  \"$key\": ")
+            when (value) {
+                is IntArray -> append(value.contentToString())
+                is Map<*, *> -> append(printMapAsJson(value as Map<String, Any?>, "$indent  "))
+                is List<*> -> append(printListAsJson(value, "$indent  "))
+                is String -> append("\"$value\"")
+                null -> append("null")
+                else -> append("\"$value\"")
+            }
+            if (index < map.size - 1) append(",")
+            append("\n")
+        }
+        append("$indent}")
+    }
+}
+
+@Suppress("UNCHECKED_CAST")
+internal fun printListAsJson(list: List<*>, indent: String = ""): String {
+    return buildString {
+        append("[\n")
+        list.forEachIndexed { i, item ->
+            append("$indent  ")
+            when (item) {
+                is Map<*, *> -> append(printMapAsJson(item as Map<String, Any?>, "$indent  "))
+                is List<*> -> append(printListAsJson(item, "$indent  "))
+                is String -> append("\"$item\"")
+                null -> append("null")
+                else -> append("\"$item\"")
+            }
+            if (i < list.size - 1) append(",")
+            append("\n")
+        }
+        append("$indent]")
+    }
+}
+
+@Suppress("UNCHECKED_CAST")
+internal fun printAsJson(obj: Any?, indent: String = ""): String {
+    return when (obj) {
+        is Map<*, *> -> printMapAsJson(obj as Map<String, Any?>, indent)
+        is List<*> -> printListAsJson(obj, indent)
+        is String -> "\"$obj\""
+        null -> "null"
+        else -> "\"$obj\""
+    }
+}
@@ -187,55 +187,4 @@ class ZdlListenerKotlinTest {
     private fun readFileContent(fileName: String): String {
         return readTestFile(fileName)
     }
-
-    fun printMapAsJson(map: Map<String, Any?>, indent: String = ""): String {
-        return buildString {
-            append("{\n")
-            map.entries.forEachIndexed { index, (key, value) ->
-                append("$indent  \"$key\": ")
-                when (value) {
-                    is IntArray -> append(value.contentToString())
-                    is Map<*, *> -> append(printMapAsJson(value as Map<String, Any?>, "$indent  "))
-                    is List<*> -> append(printListAsJson(value, "$indent  "))
-                    is String -> append("\"$value\"")
-                    null -> append("null")
-                    else -> append("\"$value\"")
-                }
-                if (index < map.size - 1) append(",")
-                append("\n")
-            }
-            append("$indent}")
-        }
-    }
-
-    fun printListAsJson(list: List<*>, indent: String = ""): String {
-        return buildString {
-            append("[\n")
-            list.forEachIndexed { i, item ->
-                append("$indent  ")
-                when (item) {
-                    is Map<*, *> -> append(printMapAsJson(item as Map<String, Any?>, "$indent  "))
-                    is List<*> -> append(printListAsJson(item, "$indent  "))
-                    is String -> append("\"$item\"")
-                    null -> append("null")
-                    else -> append("\"$item\"")
-                }
-                if (i < list.size - 1) append(",")
-                append("\n")
-            }
-            append("$indent]")
-        }
-    }
-
-    fun printAsJson(obj: Any?, indent: String = ""): String {
-        return when (obj) {
-            is Map<*, *> -> printMapAsJson(obj as Map<String, Any?>, indent)
-            is List<*> -> printListAsJson(obj, indent)
-            is String -> "\"$obj\""
-            null -> "null"
-            else -> "\"$obj\""
-        }
-    }
-
 }
-
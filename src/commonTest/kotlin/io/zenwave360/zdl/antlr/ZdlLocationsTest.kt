@@ -0,0 +1,155 @@
+package io.zenwave360.zdl.antlr
+
+import io.zenwave360.zdl.ZdlParser
+import kotlin.test.*
+
+class ZdlLocationsTest {
+
+    @Test
+    fun getFindLocation_Index() {
+        val source = readTestFile("complete.zdl")
+        val model = ZdlParser().parseModel(source)
+        val locations = model.getLocations().entries.map { it.key to it.value as IntArray }
+        // the index answers as a scan of every location would
+        for ((line, text) in source.lines().withIndex()) {
+            for (character in 0..text.length) {
+                val expected = locations.filter { (_, p) ->
+                    val afterStart = line + 1 > p[2] || (line + 1 == p[2] && character >= p[3])
+                    val beforeEnd = line + 1 < p[4] || (line + 1 == p[4] && character <= p[5])
+                    afterStart && beforeEnd
+                }.minByOrNull { (_, p) -> p[1] - p[0] }?.first
+                assertEquals(expected, model.getLocation(line + 1, character), "${line + 1}:$character")
+            }
+        }
+        for (offset in source.indices step 7) {
+            val expected = locations.filter { (_, p) -> offset >= p[0] && offset < p[1] }.minByOrNull { (_, p) -> p[1] - p[0] }?.first
+            assertEquals(expected, model.getLocationAtOffset(offset), "offset $offset")
+        }
+        assertEquals("entities.Customer.fields.customerId.type", model.getLocationAtOffset(source.indexOf("String  required")))
+
+        model.setLocation("entities.Customer.fields.customerId.type.test", intArrayOf(0, 0, 86, 20, 86, 20))
+        assertEquals("entities.Customer.fields.customerId.type.test", model.getLocation(86, 20))
+    }
+
+    @Test
+    fun locations_Columnar() {
+        val model = parseZdl("complete.zdl")
+        val locations = model.locations
+        assertEquals(locations.size, model.getLocations().size)
+        val body = model.getLocations()["entities.Customer.body"] as IntArray
+        // copies, reading does not write to the model
+        assertNotSame(body, model.getLocations()["entities.Customer.body"])
+        assertContentEquals(body, model.getLocations()["entities.Customer.body"] as IntArray)
+        assertContentEquals(body, locations["entities.Customer.body"])
+        val index = locations.indexOf("entities.Customer.body")
+        assertEquals(body[0], locations.get(index, ZdlLocations.START_OFFSET))
+        assertEquals(body[5], locations.get(index, ZdlLocations.END_CHARACTER))
+        assertEquals(locations.size, model.getLocations().entries.size)
+        assertEquals((0 until locations.size).map { locations.key(it) }, model.getLocations().keys.toList())
+
+        // writes through the map view
+        model.getLocations()["entities.Customer.body"] = intArrayOf(1, 2, 3, 4, 5, 6)
+        assertContentEquals(intArrayOf(1, 2, 3, 4, 5, 6), locations["entities.Customer.body"])
+        assertContentEquals(intArrayOf(1, 2, 3, 4, 5, 6), model.getLocations()["entities.Customer.body"] as IntArray)
+        assertEquals(index, locations.indexOf("entities.Customer.body"))
+
+        // entries read and write the locations
+        val entry = model.getLocations().entries.first { it.key == "entities.Customer.body" }
+        entry.setValue(intArrayOf(6, 5, 4, 3, 2, 1))
+        assertContentEquals(intArrayOf(6, 5, 4, 3, 2, 1), locations["entities.Customer.body"])
+        assertContentEquals(intArrayOf(6, 5, 4, 3, 2, 1), entry.value as IntArray)
+        assertTrue(model.getLocations().entries.add(mapEntry("entities.Customer.extra", intArrayOf(1, 1, 1, 1, 1, 1))))
+        assertContentEquals(intArrayOf(1, 1, 1, 1, 1, 1), locations["entities.Customer.extra"])
+    }
+
+    @Test
+    fun locations_Remove() {
+        val model = parseZdl("complete.zdl")
+        val locations = model.locations
+        val size = locations.size
+        val keys = model.getLocations().keys.toList()
+        val body = locations["entities.Customer.body"]!!
+        assertEquals("entities.Customer.body", model.getLocationAtOffset(body[0]))
+
+        assertContentEquals(body, model.getLocations().remove("entities.Customer.body") as IntArray)
+        assertNull(model.getLocations().remove("entities.Customer.body"))
+        assertEquals(size - 1, locations.size)
+        assertFalse("entities.Customer.body" in locations)
+        assertNotEquals("entities.Customer.body", model.getLocationAtOffset(body[0]))
+
+        // removes while iterating, the locations left keep their order and values
+        val iterator = model.getLocations().entries.iterator()
+        iterator.next()
+        iterator.remove()
+        assertFailsWith<IllegalStateException> { iterator.remove() }
+        model.getLocations().keys.remove(keys.last())
+        model.getLocations().entries.removeAll { it.key.startsWith("services.") }
+        val left = keys.drop(1).dropLast(1).filter { it != "entities.Customer.body" && !it.startsWith("services.") }
+        assertEquals(left, model.getLocations().keys.toList())
+        assertEquals(left, (0 until locations.size).map { locations.key(it) })
+        assertEquals(left.indices.toList(), left.map { locations.indexOf(it) })
+        val expected = parseZdl("complete.zdl").locations
+        for (key in left) assertContentEquals(expected[key], locations[key], key)
+
+        // set after removals, and putAll
+        model.getLocations().putAll(mapOf("entities.Customer.body" to body, "x" to intArrayOf(1, 2, 3, 4, 5, 6)))
+        assertEquals(left + listOf("entities.Customer.body", "x"), model.getLocations().keys.toList())
+        assertEquals(left.size + 1, locations.indexOf("x"))
+
+        model.getLocations().clear()
+        assertEquals(0, locations.size)
+        assertTrue(model.getLocations().isEmpty())
+    }
+
+    private fun mapEntry(key: String, value: Any?): MutableMap.MutableEntry<String, Any?> = mutableMapOf(key to value).entries.first()
+
+    @Test
+    fun locations_ResolvedOnRead() {
+        val model = ZdlParser().parseModel("/** 😀 emoji */\nentity A {\n  /** 😀 */ name String required\n  b B { x String }\n}\n")
+        val locations = model.locations
+        // offsets and characters both count code points
+        assertContentEquals(intArrayOf(28, 36, 3, 2, 3, 10), locations["entities.A.fields.name.javadoc"])
+        assertContentEquals(intArrayOf(37, 41, 3, 11, 3, 15), locations["entities.A.fields.name.name"])
+        assertContentEquals(intArrayOf(28, 57, 3, 2, 3, 23), locations["entities.A.fields.name"])
+        assertContentEquals(intArrayOf(62, 76, 4, 4, 4, 17), locations["entities.B"])
+        assertEquals("entities.A.fields.name.name", model.getLocation(3, 12))
+
+        locations.set("entities.A.name", 0, 1, 10, 20, 30, 40)
+        assertContentEquals(intArrayOf(0, 1, 10, 20, 30, 40), locations["entities.A.name"])
+        assertContentEquals(intArrayOf(24, 78, 2, 9, 5, 0), locations["entities.A.body"])
+
+        // resolved from the lines the tokens were on, as a scan of the source finds them
+        for (file in listOf("complete.zdl", "problems.zdl")) {
+            val source = readTestFile(file)
+            val lineStarts = listOf(0) + source.indices.filter { source[it] == '\n' }.map { it + 1 }
+            val resolved = ZdlParser().parseModel(source).locations
+            for (index in 0 until resolved.size) {
+                val start = resolved.get(index, ZdlLocations.START_OFFSET)
+                val line = lineStarts.indexOfLast { it <= start }
+                val position = intArrayOf(line + 1, start - lineStarts[line])
+                assertContentEquals(position, resolved.position(index).copyOfRange(2, 4), "$file ${resolved.key(index)}")
+            }
+        }
+    }
+
+    @Test
+    fun parseModel_WithoutLocations() {
+        val parser = ZdlParser().withLocations(false)
+        for (file in listOf("complete.zdl", "problems.zdl")) {
+            val expected = ZdlParser().parseModel(readTestFile(file))
+            val model = parser.parseModel(readTestFile(file))
+            assertEquals(0, model.locations.size)
+            assertEquals(printAsJson(expected.filterKeys { it != "locations" && it != "problems" }), printAsJson(model.filterKeys { it != "locations" && it != "problems" }), file)
+            assertEquals(expected.getProblems().map { it["path"] to it["message"] }, model.getProblems().map { it["path"] to it["message"] }, file)
+            assertTrue(model.getProblems().all { it["location"] == null })
+        }
+
+        // edits parse the whole source again
+        val source = readTestFile("complete.zdl")
+        val edit = editAt(source, "orderTime Instant", "orderTime", "orderedAt")
+        val model = parser.parseModel(parser.parseModel(source), source, edit)
+        assertEquals(printAsJson(parser.parseModel(edit.applyTo(source))), printAsJson(model))
+    }
+
+    private fun parseZdl(fileName: String): ZdlModel = ZdlParser().parseModel(readTestFile(fileName))
+}
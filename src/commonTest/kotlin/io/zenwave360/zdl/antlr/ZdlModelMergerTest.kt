@@ -0,0 +1,55 @@
+package io.zenwave360.zdl.antlr
+
+import io.zenwave360.zdl.ZdlParser
+import kotlin.test.*
+
+class ZdlModelMergerTest {
+
+    @Test
+    fun parseModels_MultipleFiles() {
+        val files = mapOf(
+            "orders/services.zdl" to "service OrdersService for (Order) {\n    getOrder(id) Order\n}\n",
+            "customers.zdl" to "entity Customer {\n    name String\n}\nrelationship OneToMany {\n    Customer{orders} to Order\n}\n",
+            "orders/order.zdl" to "entity Order {\n    customer Customer\n    status Status\n}\nrelationship ManyToOne {\n    Order{product} to Product\n}\n",
+        )
+        val model = ZdlParser().parseModels(files)
+        assertEquals(listOf("Customer", "Order"), model.getEntities().keys.toList())
+        assertEquals(setOf("OneToMany", "ManyToOne"), model.getRelationships().keys)
+        assertEquals(true, JSONPath.get(model, "$.entities.Order.fields.customer.isEntity"))
+        assertEquals("customers.zdl", model.getLocationFile("entities.Customer"))
+        // locations are relative to their own file
+        assertEquals(3, (model.getLocations()["entities.Order.fields.status.type"] as IntArray)[2])
+
+        val problems = model.getProblems()
+        assertEquals(listOf("orders/order.zdl#entities.Order.fields.status.type", "orders/services.zdl#services.OrdersService.aggregates",
+            "orders/order.zdl#relationships.ManyToOne_Order{product}_Product.to.entity"),
+            problems.map { it["path"] })
+        assertEquals("orders/order.zdl", problems[0]["file"])
+        // same result regardless of map ordering
+        assertEquals(printAsJson(model), printAsJson(ZdlParser().parseModels(files.entries.reversed().associate { it.toPair() })))
+    }
+
+    @Test
+    fun parseModels_Duplicates() {
+        val files = mapOf(
+            "a.zdl" to "entity Customer {\n    name String\n    email String\n}\nenum Status { ACTIVE }\n",
+            "b.zdl" to "\n\nentity Customer {\n    name String\n}\n",
+        )
+        val model = ZdlParser().parseModels(files)
+        assertEquals(listOf("name"), JSONPath.get<Map<*, *>>(model, "$.entities.Customer.fields")?.keys?.toList())
+
+        val problems = model.getProblems()
+        assertEquals(1, problems.size)
+        assertEquals("b.zdl#entities.Customer", problems[0]["path"])
+        assertEquals("Customer is defined in both a.zdl and b.zdl, the definition in b.zdl is used", problems[0]["message"])
+        assertEquals("WARNING", problems[0]["severity"])
+        assertEquals("duplicate", problems[0]["code"])
+
+        // locations of the replaced definition are dropped
+        assertEquals("b.zdl", model.getLocationFile("entities.Customer.fields.name"))
+        assertEquals(4, (model.getLocations()["entities.Customer.fields.name"] as IntArray)[2])
+        assertNull(model.getLocations()["entities.Customer.fields.email"])
+        assertNull(model.getLocationFile("entities.Customer.fields.email"))
+        assertEquals("a.zdl", model.getLocationFile("enums.Status"))
+    }
+}
@@ -0,0 +1,227 @@
+package io.zenwave360.zdl.antlr
+
+import io.zenwave360.zdl.ZdlExecutor
+import io.zenwave360.zdl.ZdlFieldType
+import io.zenwave360.zdl.ZdlInstrumentation
+import io.zenwave360.zdl.ZdlParser
+import io.zenwave360.zdl.ZdlTextEdit
+import io.zenwave360.zdl.ZdlTypeCategory
+import io.zenwave360.zdl.ZdlTypeRegistry
+import kotlin.test.*
+
+class ZdlModelValidatorTest {
+
+    @Test
+    fun parseZdl_Problems_TypeRegistry() {
+        assertEquals(ZdlParser.STANDARD_FIELD_TYPES, ZdlTypeRegistry.STANDARD.names.toList())
+        assertEquals("java.time.Instant", ZdlTypeRegistry.STANDARD["Instant"]?.javaType)
+
+        val registry = ZdlTypeRegistry.STANDARD.with(ZdlFieldType("OrderStatusX", ZdlTypeCategory.ENUM))
+        val problems = ZdlParser().withTypeRegistry(registry).parseModel(readTestFile("problems.zdl")).getProblems()
+        assertEquals(12, problems.size)
+        assertEquals(ZdlTypeCategory.ENUM, registry["OrderStatusX"]?.category)
+        assertFalse("OrderStatusX" in ZdlTypeRegistry.STANDARD)
+
+        val both = ZdlParser().withTypeRegistry(registry).withExtraFieldTypes(listOf("OrderStatusX", "Money"))
+        assertEquals(12, both.parseModel(readTestFile("problems.zdl")).getProblems().size)
+    }
+
+    @Test
+    fun parseZdl_Problems_Collector() {
+        val source = readTestFile("problems.zdl")
+        val model = ZdlParser().parseModel(source)
+        val problems = model.getProblems().map { it["path"] to it["message"] }
+        val first = model.getProblems().first() as ZdlProblem
+        assertEquals(ZdlProblemSeverity.ERROR, first.severity)
+        assertEquals("ERROR", first["severity"])
+        assertTrue(first.code in ZdlValidationRules.BUILT_IN.map { it.id })
+        assertContentEquals(model.getLocations()[first.path] as IntArray, first["location"] as IntArray)
+
+        val limited = ZdlParser().withMaxProblems(3).parseModel(source)
+        assertEquals(problems.take(3), limited.getProblems().map { it["path"] to it["message"] })
+        assertTrue(limited.problemCollector.isFull)
+        assertFalse(limited.problemCollector.add("entities.Other", "X", "%s is not a valid type"))
+
+        val failFast = ZdlParser().withFailFast(true).parseModel(source)
+        assertEquals(problems.take(1), failFast.getProblems().map { it["path"] to it["message"] })
+
+        // the limits are shared by all rules, the ones left once the model is full are not run
+        val ran = mutableListOf<String>()
+        val instrumentation = object : ZdlInstrumentation {
+            override fun ruleCompleted(sourceName: String, ruleId: String, wallTimeNanos: Long, problems: Int) {
+                ran.add("$ruleId:$problems")
+            }
+        }
+        ZdlParser().withFailFast(true).withInstrumentation(instrumentation).parseModel(source)
+        assertEquals(listOf("apis:1"), ran)
+        ran.clear()
+        val reversed = object : ZdlExecutor {
+            override fun <T> invokeAll(tasks: List<() -> T>): List<T> = tasks.reversed().map { it() }.reversed()
+        }
+        val limitedParallel = ZdlParser().withMaxProblems(3).withValidationExecutor(reversed).withInstrumentation(instrumentation).parseModel(source)
+        assertEquals(problems.take(3), limitedParallel.getProblems().map { it["path"] to it["message"] })
+        assertEquals(3, ran.sumOf { it.substringAfter(':').toInt() })
+
+        // duplicates are dropped
+        val size = model.getProblems().size
+        model.addProblem(first.path, first.value, "%s is not a valid type")
+        model.addProblem(first.path, first.value, "%s is not a valid type")
+        assertEquals(size + 1, model.getProblems().size)
+        model.clearProblems()
+        assertEquals(0, model.getProblems().size)
+    }
+
+    @Test
+    fun parseZdl_Problems_ValidationExecutor() {
+        // runs the passes last to first, results still in submission order
+        val reversed = object : ZdlExecutor {
+            override fun <T> invokeAll(tasks: List<() -> T>): List<T> = tasks.reversed().map { it() }.reversed()
+        }
+        for (file in listOf("problems.zdl", "complete.zdl")) {
+            val expected = ZdlParser().parseModel(readTestFile(file)).getProblems().map { it["path"] to it["message"] }
+            val problems = ZdlParser().withValidationExecutor(reversed).parseModel(readTestFile(file)).getProblems()
+            assertEquals(expected, problems.map { it["path"] to it["message"] }, file)
+        }
+    }
+
+    @Test
+    fun parseZdl_Problems_ValidationRules() {
+        val noJavadoc = ZdlValidationRule.of("entity-javadoc") { context ->
+            for ((name, entity) in context.model.getEntities()) {
+                if ((entity as Map<*, *>)["javadoc"] == null) context.addProblem("entities.$name", name, "%s has no javadoc")
+            }
+        }
+        val ruleProblems = mutableMapOf<String, Int>()
+        val instrumentation = object : ZdlInstrumentation {
+            override fun ruleCompleted(sourceName: String, ruleId: String, wallTimeNanos: Long, problems: Int) {
+                assertTrue(wallTimeNanos >= 0)
+                ruleProblems[ruleId] = problems
+            }
+        }
+        val parser = ZdlParser().withValidationRules(ZdlValidationRules.BUILT_IN + noJavadoc).withInstrumentation(instrumentation)
+
+        val problems = parser.parseModel(readTestFile("problems.zdl")).getProblems()
+        assertEquals(ZdlValidationRules.BUILT_IN.map { it.id } + "entity-javadoc", ruleProblems.keys.toList())
+        assertEquals(problems.size, ruleProblems.values.sum())
+        assertEquals(2, ruleProblems["apis"])
+        assertTrue(ruleProblems.getValue("entity-javadoc") > 0)
+        assertTrue((problems.last()["message"] as String).endsWith("has no javadoc"))
+
+        ruleProblems.clear()
+        val cheap = parser.withDisabledValidationRules(listOf("entity-javadoc", "apis")).parseModel(readTestFile("problems.zdl"))
+        assertEquals(listOf("entities", "inputs", "outputs", "events", "aggregates", "services", "relationships"), ruleProblems.keys.toList())
+        assertEquals(12, cheap.getProblems().size)
+    }
+
+    @Test
+    fun parseZdl_Problems_FailingRule() {
+        val failing = ZdlValidationRule.of("failing", incremental = true) { context ->
+            context.addProblem("entities.Customer", "Customer", "%s checked")
+            throw IllegalStateException("rule bug")
+        }
+        val parser = ZdlParser().withValidationRules(ZdlValidationRules.BUILT_IN + failing)
+
+        val model = parser.parseModel(readTestFile("problems.zdl"))
+        val problems = model.getProblems()
+        assertEquals(16, problems.size)
+        assertEquals("Customer checked", problems[problems.size - 2]["message"])
+        val failure = problems.last()
+        assertEquals("Validation rule failing failed: rule bug", failure["message"])
+        assertEquals("ERROR", failure["severity"])
+        assertEquals("failing", failure["code"])
+    }
+
+    @Test
+    fun parseModel_Incremental_DottedNames() {
+        val parser = ZdlParser().withKeepSource(true)
+        val source = "entity com.example.A {\n    x Missing\n}\nentity B {\n    y Missing\n}\n"
+        val previous = parser.parseModel(source)
+        assertEquals(listOf("entities.com.example.A.fields.x.type", "entities.B.fields.y.type"), previous.getProblems().map { it["path"] })
+
+        // problems of the unchanged dotted name entity are kept
+        val model = parser.parseModel(previous, editAt(source, "y Missing", "Missing", "String"))
+        assertEquals(listOf("entities.com.example.A.fields.x.type"), model.getProblems().map { it["path"] })
+
+        val custom = ZdlValidationRule.of("custom", incremental = true) { context ->
+            context.addProblem("entities.com.example.A.name", "A", "%s is checked")
+        }
+        val withCustom = ZdlParser().withKeepSource(true).withValidationRules(listOf(custom))
+        val edited = withCustom.parseModel(withCustom.parseModel(source), editAt(source, "y Missing", "Missing", "String"))
+        assertEquals(listOf("entities.com.example.A.name"), edited.getProblems().map { it["path"] })
+    }
+
+    @Test
+    fun parseModel_Incremental_Validation() {
+        val parser = ZdlParser().withKeepSource(true)
+        val source = readTestFile("problems.zdl")
+        val edits = listOf(
+            // fixes a field type
+            editAt(source, "status OrderStatusX = ", "OrderStatusX", "OrderStatus"),
+            // renames an enum, the fields referencing it become invalid
+            editAt(source, "enum OrderStatus {", "OrderStatus", "OrderStatuses"),
+            // fixes the aggregate root
+            editAt(source, "aggregate CustomerOrderAggregate(CustomerOrderX)", "CustomerOrderX", "CustomerOrder"),
+            // renames the entity the aggregate, service and inputs reference
+            editAt(source, "entity CustomerOrder {", "CustomerOrder", "CustomerOrderX"),
+        )
+        for (edit in edits) {
+            val model = parser.parseModel(parser.parseModel(source), edit)
+            val expected = parser.parseModel(edit.applyTo(source))
+            assertEquals(expected.getProblems().map { it["path"] to it["message"] }, model.getProblems().map { it["path"] to it["message"] }, edit.toString())
+            assertEquals(printAsJson(expected), printAsJson(model), edit.toString())
+        }
+
+        // chained edits, each validated against the previous version
+        var current = parser.parseModel(source)
+        var text = source
+        for (edit in listOf(edits[0], ZdlTextEdit(edits[0].offset, "OrderStatus".length, "OrderStatusY"))) {
+            current = parser.parseModel(current, edit)
+            text = edit.applyTo(text)
+            assertEquals(printAsJson(parser.parseModel(text)), printAsJson(current), edit.toString())
+        }
+
+        // candidate edits of the same version, each validated incrementally against it
+        val validated = mutableListOf<String>()
+        val recording = ZdlValidationRule.of("recording", incremental = true) { context ->
+            for (name in context.model.getEntities().keys) {
+                if (context.startElement("entities.$name")) validated.add(name)
+            }
+        }
+        val recordingParser = parser.withValidationRules(ZdlValidationRules.BUILT_IN + recording)
+        val previous = recordingParser.parseModel(source)
+        for (edit in listOf(edits[2], edits[0], edits[2])) {
+            val fresh = recordingParser.parseModel(source)
+            validated.clear()
+            recordingParser.parseModel(fresh, edit)
+            val expected = validated.toList()
+            validated.clear()
+            val model = recordingParser.parseModel(previous, edit)
+            assertEquals(expected, validated, edit.toString())
+            assertEquals(printAsJson(parser.parseModel(edit.applyTo(source))), printAsJson(model), edit.toString())
+        }
+        // the aggregate root fix touches no entity
+        assertEquals(emptyList(), validated)
+
+        val graph = ZdlReferenceGraph.of(parser.parseModel(source))
+        assertTrue("inputs.CustomerOrderInput" in graph.referencedBy("OrderStatus"))
+        assertTrue("services.OrdersService" in graph.referencedBy("CustomerOrderX"))
+        assertTrue("OrderStatusX" in graph.references("entities.CustomerOrder"))
+    }
+
+    @Test
+    fun symbolTable() {
+        val model = parseZdl("complete.zdl")
+        val symbols = ZdlSymbolTable.of(model)
+        assertEquals(setOf(ZdlSymbolKind.ENTITY, ZdlSymbolKind.AGGREGATE), symbols["CustomerOrder"]?.kinds)
+        assertSame(model.getEntities()["CustomerOrder"], symbols.definition("CustomerOrder", ZdlSymbolKind.AGGREGATE))
+        assertSame(model.getAggregates()["CustomerOrderAggregate"], symbols.definition("CustomerOrderAggregate", ZdlSymbolKind.AGGREGATE))
+        assertTrue(symbols.isA("OrderStatus", ZdlSymbolKind.ENUM))
+        assertTrue(symbols.isAny("CustomerOrderInput", ZdlSymbolKind.ENTITY, ZdlSymbolKind.INPUT))
+        assertFalse(symbols.isA("CustomerOrderInput", ZdlSymbolKind.ENTITY))
+        assertFalse(symbols.isA(null, ZdlSymbolKind.ENTITY))
+        assertNull(symbols["Missing"])
+        assertEquals(ZdlSymbolKind.entries.sumOf { (model[it.section] as Map<*, *>).size }, symbols.size)
+    }
+
+    private fun parseZdl(fileName: String): ZdlModel = ZdlParser().parseModel(readTestFile(fileName))
+}
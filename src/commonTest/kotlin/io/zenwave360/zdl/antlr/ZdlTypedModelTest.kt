@@ -0,0 +1,90 @@
+package io.zenwave360.zdl.antlr
+
+import io.zenwave360.zdl.ZdlParser
+import kotlin.test.*
+
+class ZdlTypedModelTest {
+
+    @Test
+    fun typedModel() {
+        val model = parseZdl("complete.zdl")
+        val typed = ZdlTypedModel.of(model)
+
+        val customerOrder = typed.entities["CustomerOrder"]!!
+        assertEquals((model.getEntities()["CustomerOrder"] as Map<*, *>).keys, customerOrder.map.keys)
+        assertEquals("customer_order", customerOrder.tableName)
+        assertTrue(customerOrder.isAggregate)
+        assertEquals((customerOrder.map["fields"] as Map<*, *>).keys, customerOrder.fields.keys)
+        val orderTime = customerOrder.fields["orderTime"]!!
+        assertEquals("Instant", orderTime.type)
+        assertEquals("Instant.now()", orderTime.initialValue)
+        assertEquals("orderTime javadoc", orderTime.javadoc)
+        assertEquals(mapOf<String, Any?>("required" to ""), orderTime.validations)
+        assertTrue(customerOrder.fields["status"]!!.isEnum)
+        assertTrue(customerOrder.fields["customerDetails"]!!.isEntity)
+        assertEquals(true, customerOrder.fields["customerDetails"]!!.options["ref"])
+
+        assertTrue("RECEIVED" in typed.enums["OrderStatus"]!!.values)
+        assertEquals("OrderEvent javadoc", typed.events["OrderEvent"]!!.javadoc)
+        assertTrue(typed.inputs["CustomerOrderInput"]!!.fields.keys.containsAll(listOf("orderTime", "status", "customerId")))
+
+        val aggregate = typed.aggregates["CustomerOrderAggregate"]!!
+        assertEquals("CustomerOrder", aggregate.aggregateRoot)
+        assertEquals("CustomerOrderInput", aggregate.commands["customerOrderCommand"]!!.parameter)
+        assertEquals(setOf("OrderEvent"), aggregate.commands["customerOrderCommand"]!!.eventNames)
+
+        val service = typed.services["OrdersService"]!!
+        assertEquals(listOf("CustomerOrder"), service.aggregates)
+        val getCustomerOrder = service.methods["getCustomerOrder"]!!
+        assertEquals("id", getCustomerOrder.paramId)
+        assertEquals("CustomerOrder", getCustomerOrder.returnType)
+        assertTrue(getCustomerOrder.returnTypeIsOptional)
+        assertEquals("/{orderId}", getCustomerOrder.options["get"])
+        assertEquals(setOf("OrderEvent", "OrderEventFailed"), service.methods["createOrder"]!!.eventNames)
+        assertEquals(listOf<Any?>(listOf("OrderEvent", "OrderEventFailed")), service.methods["createOrder"]!!.withEvents)
+
+        val relationship = typed.relationships["ManyToOne_Address{customer2}_Customer"]!!
+        assertEquals("ManyToOne", relationship.type)
+        assertEquals("Address", relationship.from)
+        assertEquals("Customer", relationship.to)
+        assertEquals("customer2", relationship.injectedFieldInFrom)
+        assertTrue(relationship.isInjectedFieldInFromRequired)
+        assertEquals(model.getRelationships().values.sumOf { (it as Map<*, *>).size }, typed.relationships.size)
+    }
+
+    @Test
+    fun typedModel_ReadOnlyView() {
+        val model = parseZdl("complete.zdl")
+        val typed = ZdlTypedModel.of(model)
+        val customerOrder = typed.entities["CustomerOrder"]!!
+
+        // maps and lists are views, not the model ones, nested ones included
+        assertNotSame(JSONPath.get(model, "$.entities.CustomerOrder.options"), customerOrder.options)
+        assertNotSame(JSONPath.get(model, "$.entities.CustomerOrder.fields"), customerOrder.map["fields"])
+        assertEquals(mapOf<String, Any?>("aggregate" to true), customerOrder.options)
+
+        // built once, then again after the model changed
+        assertSame(typed.entities, typed.entities)
+        assertSame(customerOrder, typed.entities["CustomerOrder"])
+        val status = customerOrder.fields["status"]!!
+        assertTrue(status.isEnum)
+        val statusNode = JSONPath.get<MutableMap<String, Any?>>(model, "$.entities.CustomerOrder.fields.status")!!
+        statusNode["isEnum"] = false
+        statusNode.remove("name")
+        assertTrue(typed.entities["CustomerOrder"]!!.fields["status"]!!.isEnum)
+        model.changed()
+        val changed = typed.entities["CustomerOrder"]!!.fields["status"]!!
+        assertFalse(changed.isEnum)
+        assertNull(changed.name)
+        assertTrue(status.isEnum)
+        // elements of the same model node are equal
+        assertEquals(status, changed)
+        assertEquals(customerOrder, typed.entities["CustomerOrder"])
+        assertNotEquals<ZdlElement>(customerOrder, typed.inputs["CustomerOrderInput"]!!)
+        model.getEntities().remove("CustomerOrder")
+        model.changed()
+        assertNull(typed.entities["CustomerOrder"])
+    }
+
+    private fun parseZdl(fileName: String): ZdlModel = ZdlParser().parseModel(readTestFile(fileName))
+}
@@ -0,0 +1,52 @@
+package io.zenwave360.zdl
+
+internal actual fun <T> threadLocal(initializer: () -> T): () -> T {
+    val value = lazy(initializer)
+    return { value.value }
+}
+
+internal actual fun defaultExecutor(): ZdlExecutor = ZdlExecutor.SEQUENTIAL
+
+internal actual fun counter(): Counter = object : Counter {
+    private var value = 0L
+    override fun increment() { value++ }
+    override fun get(): Long = value
+}
+
+internal actual fun <K : Any, V> concurrentCache(maxSize: Int): ConcurrentCache<K, V> = object : ConcurrentCache<K, V> {
+    // insertion ordered, so the first key is the oldest one
+    private val map = LinkedHashMap<K, V>()
+    override fun getOrPut(key: K, compute: () -> V): V {
+        map[key]?.let { return it }
+        val value = compute()
+        map[key] = value
+        if (map.size > maxSize) {
+            map.remove(map.keys.first())
+        }
+        return value
+    }
+    override val size: Int get() = map.size
+    override fun clear() = map.clear()
+}
+
+internal actual fun <K : Any, V> lruCache(maxWeight: Long): WeightedCache<K, V> = object : WeightedCache<K, V> {
+    // moved to the end on each use, so the first key is the least recently used one
+    private val map = LinkedHashMap<K, Pair<V, Int>>()
+    private var total = 0L
+    override fun getOrPut(key: K, weight: Int, compute: () -> V): V {
+        map.remove(key)?.let { map[key] = it; return it.first }
+        val value = compute()
+        if (weight > maxWeight) return value
+        map[key] = value to weight
+        total += weight
+        while (total > maxWeight) {
+            total -= map.remove(map.keys.first())!!.second
+        }
+        return value
+    }
+    override val size: Int get() = map.size
+    override val weight: Long get() = total
+    override fun clear() { map.clear(); total = 0 }
+}
+
+internal actual fun currentThreadAllocatedBytes(): Long = -1
@@ -0,0 +1,75 @@
+package io.zenwave360.zdl
+
+import java.lang.management.ManagementFactory
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.ForkJoinPool
+import java.util.concurrent.atomic.LongAdder
+
+internal actual fun <T> threadLocal(initializer: () -> T): () -> T {
+    val threadLocal = ThreadLocal.withInitial(initializer)
+    return { threadLocal.get() }
+}
+
+private val forkJoinExecutor: ZdlExecutor by lazy { ZdlExecutors.fromExecutorService(ForkJoinPool.commonPool()) }
+
+internal actual fun defaultExecutor(): ZdlExecutor = forkJoinExecutor
+
+internal actual fun counter(): Counter = object : Counter {
+    private val adder = LongAdder()
+    override fun increment() = adder.increment()
+    override fun get(): Long = adder.sum()
+}
+
+internal actual fun <K : Any, V> concurrentCache(maxSize: Int): ConcurrentCache<K, V> = object : ConcurrentCache<K, V> {
+    // values are computed outside of the map lock, by the first caller of the winning Lazy
+    private val map = ConcurrentHashMap<K, Lazy<V>>()
+    override fun getOrPut(key: K, compute: () -> V): V {
+        map[key]?.let { return it.value }
+        val value = map.computeIfAbsent(key) { lazy(compute) }.value
+        if (map.size > maxSize) {
+            // approximate eviction: drop arbitrary entries, callers only lose the cached value
+            val iterator = map.keys.iterator()
+            while (map.size > maxSize && iterator.hasNext()) {
+                if (iterator.next() != key) iterator.remove()
+            }
+        }
+        return value
+    }
+    override val size: Int get() = map.size
+    override fun clear() = map.clear()
+}
+
+internal actual fun <K : Any, V> lruCache(maxWeight: Long): WeightedCache<K, V> = object : WeightedCache<K, V> {
+    private inner class Entry(val value: Lazy<V>, val weight: Int)
+    // access ordered, so the first entry is the least recently used one; values are computed outside of the lock
+    private val map = LinkedHashMap<K, Entry>(16, 0.75f, true)
+    private var total = 0L
+    override fun getOrPut(key: K, weight: Int, compute: () -> V): V {
+        if (weight > maxWeight) return compute()
+        val entry = synchronized(map) {
+            map[key] ?: Entry(lazy(compute), weight).also { entry ->
+                map[key] = entry
+                total += weight
+                val iterator = map.values.iterator()
+                while (total > maxWeight && iterator.hasNext()) {
+                    val eldest = iterator.next()
+                    if (eldest === entry) continue
+                    iterator.remove()
+                    total -= eldest.weight
+                }
+            }
+        }
+        return entry.value.value
+    }
+    override val size: Int get() = synchronized(map) { map.size }
+    override val weight: Long get() = synchronized(map) { total }
+    override fun clear() = synchronized(map) { map.clear(); total = 0 }
+}
+
+private val threadMXBean: com.sun.management.ThreadMXBean? =
+    (ManagementFactory.getThreadMXBean() as? com.sun.management.ThreadMXBean)
+        ?.takeIf { it.isThreadAllocatedMemorySupported && it.isThreadAllocatedMemoryEnabled }
+
+@Suppress("DEPRECATION") // Thread.threadId() needs Java 19
+internal actual fun currentThreadAllocatedBytes(): Long =
+    threadMXBean?.getThreadAllocatedBytes(Thread.currentThread().id) ?: -1
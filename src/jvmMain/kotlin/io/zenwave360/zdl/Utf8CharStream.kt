@@ -0,0 +1,179 @@
+package io.zenwave360.zdl
+
+import org.antlr.v4.kotlinruntime.CharStream
+import org.antlr.v4.kotlinruntime.IntStream
+import org.antlr.v4.kotlinruntime.misc.Interval
+import java.nio.ByteBuffer
+
+/**
+ * [CharStream] over UTF-8 encoded bytes, without going through an intermediate [String].
+ *
+ * Pure ASCII content (the common case for ZDL) is read in place from the buffer, which can be memory-mapped.
+ * Other content is decoded once into the narrowest array holding its code points: bytes, chars or ints.
+ */
+internal abstract class Utf8CharStream private constructor(private val name: String, private val size: Int) : CharStream {
+
+    companion object {
+        private val BOM = byteArrayOf(0xEF.toByte(), 0xBB.toByte(), 0xBF.toByte())
+        private const val REPLACEMENT = 0xFFFD
+
+        /** Reads from the current position to the limit of [buffer], skipping a leading byte order mark. */
+        fun of(buffer: ByteBuffer, sourceName: String): CharStream {
+            val bytes = buffer.slice()
+            if (bytes.remaining() >= BOM.size && BOM.indices.all { bytes.get(it) == BOM[it] }) {
+                bytes.position(BOM.size)
+            }
+            val content = bytes.slice()
+            for (i in 0 until content.limit()) {
+                if (content.get(i) < 0) return decode(content, sourceName)
+            }
+            return Ascii(content, sourceName)
+        }
+
+        /**
+         * Decodes in two passes, one to find the size and narrowest array for the code points and one to fill it,
+         * so non-ASCII content is not first decoded to an `IntArray` of four bytes per input byte.
+         */
+        private fun decode(bytes: ByteBuffer, sourceName: String): CharStream {
+            var size = 0
+            var maxCodePoint = 0
+            forEachCodePoint(bytes) { codePoint ->
+                size++
+                if (codePoint > maxCodePoint) maxCodePoint = codePoint
+            }
+            var index = 0
+            return when {
+                maxCodePoint <= 0xFF -> {
+                    val latin1 = ByteArray(size)
+                    forEachCodePoint(bytes) { latin1[index++] = it.toByte() }
+                    Latin1(latin1, sourceName)
+                }
+                maxCodePoint <= 0xFFFF -> {
+                    val chars = CharArray(size)
+                    forEachCodePoint(bytes) { chars[index++] = it.toChar() }
+                    Bmp(chars, sourceName)
+                }
+                else -> {
+                    val codePoints = IntArray(size)
+                    forEachCodePoint(bytes) { codePoints[index++] = it }
+                    Supplementary(codePoints, sourceName)
+                }
+            }
+        }
+
+        /**
+         * Calls [action] with each code point of the UTF-8 [bytes]. Like the JDK decoder, overlong encodings,
+         * surrogates and code points past U+10FFFF are malformed, and each malformed sequence, up to the first byte
+         * that can not continue it, is replaced with one U+FFFD.
+         */
+        private inline fun forEachCodePoint(bytes: ByteBuffer, action: (Int) -> Unit) {
+            val limit = bytes.limit()
+            var i = 0
+            while (i < limit) {
+                val b = bytes.get(i++).toInt() and 0xFF
+                if (b < 0x80) {
+                    action(b)
+                    continue
+                }
+                val length: Int
+                var codePoint: Int
+                // range of the next byte, narrower after some leading bytes
+                var min = 0x80
+                var max = 0xBF
+                when (b) {
+                    in 0xC2..0xDF -> {
+                        length = 2
+                        codePoint = b and 0x1F
+                    }
+                    in 0xE0..0xEF -> {
+                        length = 3
+                        codePoint = b and 0x0F
+                        if (b == 0xE0) min = 0xA0
+                    }
+                    in 0xF0..0xF4 -> {
+                        length = 4
+                        codePoint = b and 0x07
+                        if (b == 0xF0) min = 0x90 else if (b == 0xF4) max = 0x8F
+                    }
+                    else -> {
+                        action(REPLACEMENT)
+                        continue
+                    }
+                }
+                var read = 1
+                while (read < length && i < limit) {
+                    val next = bytes.get(i).toInt() and 0xFF
+                    if (next < min || next > max) break
+                    codePoint = (codePoint shl 6) or (next and 0x3F)
+                    min = 0x80
+                    max = 0xBF
+                    i++
+                    read++
+                }
+                // a complete surrogate is one malformed sequence, an incomplete one ends where it stops
+                action(if (read == length && (codePoint < 0xD800 || codePoint > 0xDFFF)) codePoint else REPLACEMENT)
+            }
+        }
+    }
+
+    private class Ascii(private val bytes: ByteBuffer, sourceName: String) : Utf8CharStream(sourceName, bytes.limit()) {
+        override fun codePointAt(index: Int): Int = bytes.get(index).toInt()
+    }
+
+    private class Latin1(private val bytes: ByteArray, sourceName: String) : Utf8CharStream(sourceName, bytes.size) {
+        override fun codePointAt(index: Int): Int = bytes[index].toInt() and 0xFF
+    }
+
+    private class Bmp(private val chars: CharArray, sourceName: String) : Utf8CharStream(sourceName, chars.size) {
+        override fun codePointAt(index: Int): Int = chars[index].code
+    }
+
+    private class Supplementary(private val codePoints: IntArray, sourceName: String) : Utf8CharStream(sourceName, codePoints.size) {
+        override fun codePointAt(index: Int): Int = codePoints[index]
+    }
+
+    private var position = 0
+
+    protected abstract fun codePointAt(index: Int): Int
+
+    override val sourceName: String
+        get() = name
+
+    override fun consume() {
+        check(position < size) { "cannot consume EOF" }
+        position++
+    }
+
+    override fun LA(i: Int): Int {
+        val index = when {
+            i > 0 -> position + i - 1
+            i < 0 -> position + i
+            else -> return 0 // undefined
+        }
+        return if (index < 0 || index >= size) IntStream.EOF else codePointAt(index)
+    }
+
+    override fun mark(): Int = -1
+
+    override fun release(marker: Int) {}
+
+    override fun index(): Int = position
+
+    override fun seek(index: Int) {
+        position = index
+    }
+
+    override fun size(): Int = size
+
+    override fun getText(interval: Interval): String {
+        val start = minOf(interval.a, size)
+        val length = minOf(interval.b - interval.a + 1, size - start)
+        val text = StringBuilder(maxOf(length, 0))
+        for (index in start until start + length) {
+            text.appendCodePoint(codePointAt(index))
+        }
+        return text.toString()
+    }
+
+    override fun toString(): String = getText(Interval(0, size - 1))
+}
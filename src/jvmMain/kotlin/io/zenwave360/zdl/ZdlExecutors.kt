@@ -0,0 +1,25 @@
+package io.zenwave360.zdl
+
+import java.util.concurrent.Callable
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.ExecutorService
+
+object ZdlExecutors {
+
+    /** Adapts a JVM [ExecutorService] (fixed pool, virtual threads, fork-join...) to a [ZdlExecutor]. */
+    @JvmStatic
+    fun fromExecutorService(executorService: ExecutorService): ZdlExecutor = object : ZdlExecutor {
+        override fun <T> invokeAll(tasks: List<() -> T>): List<T> {
+            if (tasks.size <= 1) {
+                return tasks.map { it() }
+            }
+            return executorService.invokeAll(tasks.map { Callable(it) }).map { future ->
+                try {
+                    future.get()
+                } catch (e: ExecutionException) {
+                    throw e.cause ?: e
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package io.zenwave360.zdl
+
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.Paths
+
+/** [ZdlImportLoader]s for the JVM. */
+object ZdlImportLoaders {
+
+    /**
+     * Loads files relative to the importing file, or to [baseDir] for absolute imports and for the root model.
+     * Paths are normalized absolute file system paths.
+     */
+    @JvmStatic
+    fun fileSystem(baseDir: Path): ZdlImportLoader {
+        val root = baseDir.toAbsolutePath().normalize()
+        return ZdlImportLoader { import, importer ->
+            val path = when {
+                importer == null || import.startsWith("/") -> root.resolve(import.removePrefix("/"))
+                else -> Paths.get(importer).resolveSibling(import)
+            }.normalize()
+            if (Files.isRegularFile(path)) ZdlSource(path.toString(), Files.readAllBytes(path).decodeToString()) else null
+        }
+    }
+
+    /** Loads classpath resources relative to the importing resource, paths are resource names. */
+    @JvmStatic
+    @JvmOverloads
+    fun classpath(classLoader: ClassLoader = ZdlImportLoaders::class.java.classLoader): ZdlImportLoader =
+        ZdlImportLoader { import, importer ->
+            val name = ZdlImportLoader.resolvePath(importer, import).removePrefix("/")
+            classLoader.getResourceAsStream(name)?.use { ZdlSource(name, it.readBytes().decodeToString()) }
+        }
+}
@@ -0,0 +1,124 @@
+package io.zenwave360.zdl
+
+import jdk.jfr.Category
+import jdk.jfr.DataAmount
+import jdk.jfr.Event
+import jdk.jfr.Label
+import jdk.jfr.Name
+import jdk.jfr.Timespan
+
+/**
+ * Emits parse metrics as Java Flight Recorder events, `io.zenwave360.zdl.ParsePhase`, `io.zenwave360.zdl.ValidationRule`
+ * and `io.zenwave360.zdl.Parse`, so they show up in JFR recordings and JFR event streaming.
+ */
+object ZdlJfrInstrumentation : ZdlInstrumentation {
+
+    override fun phaseCompleted(sourceName: String, phase: ZdlParsePhase, wallTimeNanos: Long, allocatedBytes: Long) {
+        val event = ParsePhaseEvent()
+        if (event.shouldCommit()) {
+            event.sourceName = sourceName
+            event.phase = phase.name
+            event.wallTime = wallTimeNanos
+            event.allocated = allocatedBytes
+            event.commit()
+        }
+    }
+
+    override fun ruleCompleted(sourceName: String, ruleId: String, wallTimeNanos: Long, problems: Int) {
+        val event = ValidationRuleEvent()
+        if (event.shouldCommit()) {
+            event.sourceName = sourceName
+            event.rule = ruleId
+            event.wallTime = wallTimeNanos
+            event.problems = problems
+            event.commit()
+        }
+    }
+
+    override fun parseCompleted(metrics: ZdlParseMetrics) {
+        val event = ParseEvent()
+        if (event.shouldCommit()) {
+            event.sourceName = metrics.sourceName
+            event.wallTime = metrics.totalWallTimeNanos
+            event.allocated = metrics.allocatedBytes.values.let { bytes -> if (bytes.any { it < 0 }) -1 else bytes.sum() }
+            event.tokens = metrics.tokens
+            event.parseTreeNodes = metrics.parseTreeNodes
+            event.locations = metrics.locations
+            event.problems = metrics.problems
+            event.sllParses = metrics.sllParses
+            event.llFallbacks = metrics.llFallbacks
+            event.commit()
+        }
+    }
+
+    @Name("io.zenwave360.zdl.ParsePhase")
+    @Label("ZDL Parse Phase")
+    @Category("ZDL")
+    internal class ParsePhaseEvent : Event() {
+        @Label("Source")
+        var sourceName: String? = null
+
+        @Label("Phase")
+        var phase: String? = null
+
+        @Label("Wall Time")
+        @Timespan(Timespan.NANOSECONDS)
+        var wallTime: Long = 0
+
+        @Label("Allocated")
+        @DataAmount(DataAmount.BYTES)
+        var allocated: Long = 0
+    }
+
+    @Name("io.zenwave360.zdl.ValidationRule")
+    @Label("ZDL Validation Rule")
+    @Category("ZDL")
+    internal class ValidationRuleEvent : Event() {
+        @Label("Source")
+        var sourceName: String? = null
+
+        @Label("Rule")
+        var rule: String? = null
+
+        @Label("Wall Time")
+        @Timespan(Timespan.NANOSECONDS)
+        var wallTime: Long = 0
+
+        @Label("Problems")
+        var problems: Int = 0
+    }
+
+    @Name("io.zenwave360.zdl.Parse")
+    @Label("ZDL Parse")
+    @Category("ZDL")
+    internal class ParseEvent : Event() {
+        @Label("Source")
+        var sourceName: String? = null
+
+        @Label("Wall Time")
+        @Timespan(Timespan.NANOSECONDS)
+        var wallTime: Long = 0
+
+        @Label("Allocated")
+        @DataAmount(DataAmount.BYTES)
+        var allocated: Long = 0
+
+        @Label("Tokens")
+        var tokens: Int = 0
+
+        @Label("Parse Tree Nodes")
+        var parseTreeNodes: Int = 0
+
+        @Label("Locations")
+        var locations: Int = 0
+
+        @Label("Problems")
+        var problems: Int = 0
+
+        @Label("SLL Parses")
+        var sllParses: Int = 0
+
+        @Label("LL Fallbacks")
+        var llFallbacks: Int = 0
+    }
+}
@@ -0,0 +1,47 @@
+@file:JvmName("ZdlParserJvm")
+
+package io.zenwave360.zdl
+
+import io.zenwave360.zdl.antlr.ZdlModel
+import java.nio.ByteBuffer
+import java.nio.channels.Channels
+import java.nio.channels.FileChannel
+import java.nio.channels.ReadableByteChannel
+import java.nio.file.Path
+import java.nio.file.StandardOpenOption
+
+/*
+ * UTF-8 input overloads reading bytes straight into the lexer, without an intermediate String.
+ * Models parsed this way keep no source, so they can not be re-parsed incrementally.
+ */
+
+/** Parses the file at [path] through a read-only memory mapping. */
+fun ZdlParser.parseModel(path: Path): ZdlModel {
+    val buffer = FileChannel.open(path, StandardOpenOption.READ).use { channel ->
+        channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size())
+    }
+    return parseModel(Utf8CharStream.of(buffer, path.toString()))
+}
+
+/**
+ * Parses the remaining content of [channel], memory-mapped when it is a [FileChannel]. The channel is left at its end,
+ * however it was read, and is not closed.
+ */
+@JvmOverloads
+fun ZdlParser.parseModel(channel: ReadableByteChannel, sourceName: String = "<channel>"): ZdlModel {
+    if (channel is FileChannel) {
+        val position = channel.position()
+        val size = channel.size()
+        val buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, size - position)
+        // consumed, as the other channels are by reading them
+        channel.position(size)
+        return parseModel(Utf8CharStream.of(buffer, sourceName))
+    }
+    val bytes = Channels.newInputStream(channel).readBytes()
+    return parseModel(Utf8CharStream.of(ByteBuffer.wrap(bytes), sourceName))
+}
+
+/** Parses the UTF-8 bytes between the position and the limit of [buffer], which is left untouched. */
+@JvmOverloads
+fun ZdlParser.parseModel(buffer: ByteBuffer, sourceName: String = "<buffer>"): ZdlModel =
+    parseModel(Utf8CharStream.of(buffer, sourceName))
@@ -0,0 +1,35 @@
+package io.zenwave360.zdl.antlr
+
+import io.zenwave360.zdl.ZdlJfrInstrumentation
+import io.zenwave360.zdl.ZdlParser
+import jdk.jfr.Recording
+import jdk.jfr.consumer.RecordingFile
+import java.nio.file.Files
+import kotlin.test.*
+
+class ZdlJfrInstrumentationTest {
+
+    @Test
+    fun parseModel_JfrEvents() {
+        val file = Files.createTempFile("zdl", ".jfr")
+        try {
+            Recording().use { recording ->
+                recording.enable("io.zenwave360.zdl.ParsePhase")
+                recording.enable("io.zenwave360.zdl.ValidationRule")
+                recording.enable("io.zenwave360.zdl.Parse")
+                recording.start()
+                ZdlParser().withInstrumentation(ZdlJfrInstrumentation).parseModel(readTestFile("complete.zdl"))
+                recording.stop()
+                recording.dump(file)
+            }
+            val events = RecordingFile.readAllEvents(file).groupBy { it.eventType.name }
+            assertEquals(5, events["io.zenwave360.zdl.ParsePhase"]?.size)
+            assertEquals(ZdlValidationRules.BUILT_IN.map { it.id }, events["io.zenwave360.zdl.ValidationRule"]?.map { it.getString("rule") })
+            val parse = events["io.zenwave360.zdl.Parse"]!!.single()
+            assertTrue(parse.getInt("tokens") > 0)
+            assertTrue(parse.getInt("locations") > 0)
+        } finally {
+            Files.delete(file)
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package io.zenwave360.zdl.antlr
+
+import io.zenwave360.zdl.Utf8CharStream
+import io.zenwave360.zdl.ZdlParser
+import io.zenwave360.zdl.parseModel
+import io.zenwave360.zdl.ZdlExecutors
+import java.nio.ByteBuffer
+import org.antlr.v4.kotlinruntime.misc.Interval
+import java.nio.channels.Channels
+import java.nio.channels.FileChannel
+import java.nio.file.Files
+import java.nio.file.Paths
+import java.nio.file.StandardOpenOption
+import java.util.concurrent.Callable
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executors
+import kotlin.test.*
+
+class ZdlParserJvmTest {
+
+    @Test
+    fun parseModel_Path() {
+        val parser = ZdlParser()
+        for (fileName in listOf("complete.zdl", "legacy.jdl", "unrecognized-tokens.zdl")) {
+            val path = Paths.get("src/commonTest/resources/$fileName")
+            val expected = parser.parseModel(readTestFile(fileName))
+            assertEquals(printAsJson(expected), printAsJson(parser.parseModel(path)), fileName)
+        }
+    }
+
+    @Test
+    fun parseModel_Channel_Position() {
+        val parser = ZdlParser()
+        val source = readTestFile("complete.zdl")
+        val expected = printAsJson(parser.parseModel(source))
+        val bytes = source.toByteArray(Charsets.UTF_8)
+        val prefix = "// skipped\n".toByteArray(Charsets.UTF_8)
+        val file = Files.createTempFile("zdl", ".zdl")
+        try {
+            Files.write(file, prefix + bytes)
+            FileChannel.open(file, StandardOpenOption.READ).use { channel ->
+                channel.position(prefix.size.toLong())
+                assertEquals(expected, printAsJson(parser.parseModel(channel)))
+                // at the end, as a channel that is not a file channel is left
+                assertEquals(channel.size(), channel.position())
+            }
+        } finally {
+            Files.delete(file)
+        }
+        val stream = bytes.inputStream()
+        parser.parseModel(Channels.newChannel(stream))
+        assertEquals(-1, stream.read())
+    }
+
+    @Test
+    fun parseModel_NonAscii() {
+        val parser = ZdlParser()
+        for (text in listOf("Café", "日本語", "emoji 😀 javadoc")) {
+            val source = "/** $text */\nentity Customer {\n    /** $text */\n    name String required\n}\n"
+            val expected = parser.parseModel(source)
+            val bytes = source.toByteArray(Charsets.UTF_8)
+            val file = Files.createTempFile("zdl", ".zdl")
+            try {
+                Files.write(file, byteArrayOf(0xEF.toByte(), 0xBB.toByte(), 0xBF.toByte()) + bytes)
+                assertEquals(printAsJson(expected), printAsJson(parser.parseModel(file)), text)
+            } finally {
+                Files.delete(file)
+            }
+            assertEquals(printAsJson(expected), printAsJson(parser.parseModel(ByteBuffer.wrap(bytes))), text)
+            assertEquals(printAsJson(expected), printAsJson(parser.parseModel(Channels.newChannel(bytes.inputStream()))), text)
+        }
+    }
+
+    @Test
+    fun parseModel_MalformedUtf8() {
+        val samples = listOf(
+            "C0 80", "C1 BF", "E0 80 80", "E0 9F BF", "ED A0 80", "ED BF BF", "F0 80 80 80", "F4 90 80 80", "F5 80 80 80",
+            "80", "BF 41", "E2 82", "E2 82 41", "F0 9F 98", "F0 9F 98 41", "E2 28 A1", "C3 A9 FF 41", "F0 9F 98 80",
+        ).map { hex -> hex.split(' ').map { it.toInt(16).toByte() }.toByteArray() }
+        val random = java.util.Random(7)
+        val fuzz = List(500) { ByteArray(12) { (if (random.nextInt(4) == 0) random.nextInt(128) else 0x80 + random.nextInt(128)).toByte() } }
+        for (bytes in samples + fuzz) {
+            val stream = Utf8CharStream.of(ByteBuffer.wrap(bytes), "bytes")
+            val expected = String(bytes, Charsets.UTF_8).removePrefix("\uFEFF")
+            assertEquals(expected, stream.getText(Interval.of(0, stream.size() - 1)), bytes.joinToString(" ") { "%02X".format(it) })
+            assertEquals(expected.codePointCount(0, expected.length), stream.size())
+        }
+    }
+
+    @Test
+    fun parseModel_ParallelValidation() {
+        val pool = Executors.newFixedThreadPool(4)
+        try {
+            val parser = ZdlParser().withValidationExecutor(ZdlExecutors.fromExecutorService(pool))
+            for (fileName in listOf("complete.zdl", "problems.zdl")) {
+                val expected = ZdlParser().parseModel(readTestFile(fileName))
+                assertEquals(printAsJson(expected), printAsJson(parser.parseModel(readTestFile(fileName))), fileName)
+            }
+        } finally {
+            pool.shutdown()
+        }
+    }
+
+    @Test
+    fun typedModel_ReadOnly() {
+        // Kotlin/JVM checks casts to mutable collections, so read-only views can not be cast back to the model maps
+        val typed = ZdlTypedModel.of(ZdlParser().parseModel(readTestFile("complete.zdl")))
+        val customerOrder = typed.entities["CustomerOrder"]!!
+        assertFailsWith<ClassCastException> { customerOrder.map as MutableMap<*, *> }
+        assertFailsWith<ClassCastException> { customerOrder.options as MutableMap<*, *> }
+        assertFailsWith<ClassCastException> { customerOrder.map["fields"] as MutableMap<*, *> }
+        assertFailsWith<ClassCastException> { typed.config as MutableMap<*, *> }
+        assertFailsWith<ClassCastException> { typed.services["OrdersService"]!!.methods["createOrder"]!!.withEvents[0] as MutableList<*> }
+    }
+
+    @Test
+    fun parseModel_ConcurrentLocationReads() {
+        val source = readTestFile("complete.zdl")
+        val expected = ZdlParser().parseModel(source).getLocations().entries.map { it.key to (it.value as IntArray).toList() }
+        val pool = Executors.newFixedThreadPool(4)
+        try {
+            repeat(20) {
+                // locations are resolved on first read, here by all threads at once
+                val model = ZdlParser().parseModel(source)
+                val start = CountDownLatch(1)
+                val reads = (1..4).map {
+                    pool.submit(Callable {
+                        start.await()
+                        model.getLocations().entries.map { it.key to (it.value as IntArray).toList() }
+                    })
+                }
+                start.countDown()
+                for (read in reads) assertEquals(expected, read.get())
+            }
+        } finally {
+            pool.shutdown()
+        }
+    }
+}